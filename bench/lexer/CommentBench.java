@@ -0,0 +1,98 @@
+package lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// The cost of skipping comments, on sources of n comment lines, line
+// and block comments in turn, before a class:
+//
+//   loop       Lexer, which skips them in a loop
+//   recursive  the lexer as it was before: a call per comment, each
+//              comment copied into a StringBuilder
+//
+// The recursive one runs out of stack on the larger sources.
+//
+//   java -cp bin lexer.CommentBench [max lines]
+public class CommentBench {
+    private static ByteBuffer source(int lines) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < lines; i++)
+            s.append(i % 2 == 0 ? "// a line comment, " + i + "\n" : "/* a block comment, " + i + " */\n");
+        s.append("class A { }\n");
+        return ByteBuffer.wrap(s.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    // the offset of the first token from "pos" on, the blanks and
+    // comments before it skipped as the lexer did before
+    private static int recursive(ByteBuffer b, int pos) {
+        int n = b.limit();
+        while (pos < n && (b.get(pos) == ' ' || b.get(pos) == '\n' || b.get(pos) == '\r' || b.get(pos) == '\t'))
+            pos++;
+        if (pos + 1 >= n || b.get(pos) != '/')
+            return pos;
+        int cc = b.get(pos + 1);
+        if (cc == '/') {
+            StringBuilder comments = new StringBuilder();
+            int c;
+            pos += 2;
+            do {
+                c = pos < n ? b.get(pos++) : -1;
+                comments.append((char) c);
+            } while (c != '\n' && c != -1);
+            return recursive(b, pos);
+        } else if (cc == '*') {
+            StringBuilder comments = new StringBuilder();
+            int pre = -1;
+            int c;
+            pos += 2;
+            do {
+                c = pos < n ? b.get(pos++) : -1;
+                if (pre == '*' && c == '/')
+                    break;
+                comments.append((char) c);
+                pre = c;
+            } while (c != -1);
+            return recursive(b, pos);
+        }
+        return pos;
+    }
+
+    private static int loop(ByteBuffer b) {
+        return new Lexer("bench", b, false).scanAll().size();
+    }
+
+    public static void main(String[] args) {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        // warm up, on a source the recursive one can skip
+        ByteBuffer small = source(1000);
+        for (int i = 0; i < 200; i++) {
+            loop(small);
+            recursive(small, 0);
+        }
+
+        for (int lines = 1000; lines <= max; lines *= 10) {
+            ByteBuffer b = source(lines);
+            long bestLoop = Long.MAX_VALUE;
+            long bestRecursive = Long.MAX_VALUE;
+            boolean overflow = false;
+            for (int run = 0; run < 5; run++) {
+                long t0 = System.nanoTime();
+                if (loop(b) != 5)
+                    throw new AssertionError("not the tokens of the class");
+                long t1 = System.nanoTime();
+                bestLoop = Math.min(bestLoop, t1 - t0);
+                if (overflow)
+                    continue;
+                try {
+                    recursive(b, 0);
+                    bestRecursive = Math.min(bestRecursive, System.nanoTime() - t1);
+                } catch (StackOverflowError e) {
+                    overflow = true;
+                }
+            }
+            System.out.printf("%8d lines: loop %.1f ns/line, recursive %s%n", lines, bestLoop / (double) lines,
+                    overflow ? "stack overflow" : String.format("%.1f ns/line", bestRecursive / (double) lines));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+// Check that IncrementalLexer keeps the tokens of a source as a full
+// lex would: each file is edited at random, with pieces of comments
+// and tokens put in and bytes taken out, and after each edit the
+// tokens are compared with those of the edited source lexed from the
+// start. An edit which leaves the source unlexable must throw the
+// error of a full lex, at the same line and column, and leave the
+// tokens as they were; it is then undone.
+//
+// Then a line is typed in the middle of each file as it was, a byte an
+// edit, and the tokens read only at the end, as an editor would: but
+// for the first, which opens the gap there, the time of such an edit
+// does not grow with the size of the file.
+//
+//   java -cp bin lexer.IncrementalCheck <edits> <files>
+public class IncrementalCheck {
+    private static final String[] PIECES = { "/*", "*/", "//", "\n", " ", "x", "12", "class", "*", "a1",
+            ";", "{", "int y;", "" };
+
+    private static byte[] edit(byte[] source, int from, int removed, byte[] inserted) {
+        byte[] edited = new byte[source.length - removed + inserted.length];
+        System.arraycopy(source, 0, edited, 0, from);
+        System.arraycopy(inserted, 0, edited, from, inserted.length);
+        System.arraycopy(source, from + removed, edited, from + inserted.length, source.length - from - removed);
+        return edited;
+    }
+
+    private static TokenBuffer lex(String fname, byte[] source) {
+        return new Lexer(fname, ByteBuffer.wrap(source), false).scanAll();
+    }
+
+    // whether typing "line" in the middle of "source" keeps the tokens
+    private static boolean type(String fname, byte[] source, String line) {
+        IncrementalLexer lexer = new IncrementalLexer(fname, ByteBuffer.wrap(source));
+        int at = source.length / 2;
+        while (at < source.length && source[at - 1] != '\n')
+            at++;
+        // edited in place, as by an editor, so that no copy of the
+        // source is made for each byte
+        int length = source.length;
+        byte[] text = Arrays.copyOf(source, length + line.length());
+        long time = 0;
+        for (int i = 0; i < line.length(); i++) {
+            System.arraycopy(text, at + i, text, at + i + 1, length - at - i);
+            text[at + i] = (byte) line.charAt(i);
+            length++;
+            long t0 = System.nanoTime();
+            lexer.edit(ByteBuffer.wrap(text, 0, length), at + i, 0, 1);
+            time += System.nanoTime() - t0;
+        }
+        int bad = ParallelCheck.compare(lex(fname, text), lexer.tokens());
+        System.out.printf("%s: typed %d bytes, %d wrong, %.1f us an edit%n", fname, line.length(), bad,
+                time / 1e3 / line.length());
+        return bad == 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java lexer.IncrementalCheck <edits> <files>");
+            System.exit(1);
+        }
+        int edits = Integer.parseInt(args[0]);
+        Random random = new Random(42);
+        boolean ok = true;
+        for (int k = 1; k < args.length; k++) {
+            String fname = args[k];
+            byte[] original = Files.readAllBytes(Paths.get(fname));
+            byte[] source = original;
+            IncrementalLexer lexer = new IncrementalLexer(fname, ByteBuffer.wrap(source));
+            int bad = 0;
+            int failed = 0;
+            long relexed = 0;
+            long time = 0;
+            for (int e = 0; e < edits; e++) {
+                int from = random.nextInt(source.length + 1);
+                int removed = Math.min(source.length - from, random.nextInt(4));
+                byte[] inserted = PIECES[random.nextInt(PIECES.length)].getBytes();
+                byte[] edited = edit(source, from, removed, inserted);
+
+                TokenBuffer expected;
+                String error = null;
+                try {
+                    expected = lex(fname, edited);
+                } catch (LexError x) {
+                    expected = null;
+                    error = x.getMessage();
+                }
+                long t0 = System.nanoTime();
+                try {
+                    lexer.edit(ByteBuffer.wrap(edited), from, removed, inserted.length);
+                } catch (LexError x) {
+                    if (expected != null)
+                        throw x;
+                    if (!x.getMessage().equals(error)) {
+                        System.out.println("  " + x.getMessage() + " instead of " + error);
+                        bad++;
+                    }
+                    // undone: the tokens must be those before the edit
+                    failed++;
+                    edited = source;
+                    expected = lex(fname, source);
+                }
+                time += System.nanoTime() - t0;
+                relexed += lexer.relexed();
+                source = edited;
+                if (ParallelCheck.compare(expected, lexer.tokens()) > 0) {
+                    System.out.println("  after edit " + e + " at " + from + ", -" + removed + " +\""
+                            + new String(inserted) + "\"");
+                    bad++;
+                    lexer = new IncrementalLexer(fname, ByteBuffer.wrap(source));
+                }
+            }
+            System.out.printf("%s: %d edits (%d unlexable), %d wrong, %.1f tokens lexed and %.1f us an edit%n",
+                    fname, edits, failed, bad, relexed / (double) edits, time / 1e3 / edits);
+            ok &= bad == 0;
+            ok &= type(fname, original, "        total = total + this.compute(index, 12) * 3;\n");
+        }
+        System.out.println(ok ? "same tokens" : "tokens differ");
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,131 @@
+package lexer;
+
+import control.TigerCompiler;
+import lexer.Token.Kind;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The cost of telling keywords from identifiers, over the words (the
+// identifiers and keywords) of the *.java files of a directory, test
+// by default:
+//
+//   map     the bytes of the word into a StringBuilder, then a String,
+//           looked up in a HashMap, as the lexer did before
+//   switch  Lexer.keyword(), on the bytes in place
+//
+//   java -cp bin lexer.KeywordBench [dir] [rounds]
+public class KeywordBench {
+    // the keywords as the lexer had them, apart from Lexer.keyword()
+    private static final Map<String, Kind> keywords = new HashMap<>();
+
+    static {
+        keywords.put("boolean", Kind.TOKEN_BOOLEAN);
+        keywords.put("class", Kind.TOKEN_CLASS);
+        keywords.put("else", Kind.TOKEN_ELSE);
+        keywords.put("extends", Kind.TOKEN_EXTENDS);
+        keywords.put("false", Kind.TOKEN_FALSE);
+        keywords.put("if", Kind.TOKEN_IF);
+        keywords.put("int", Kind.TOKEN_INT);
+        keywords.put("length", Kind.TOKEN_LENGTH);
+        keywords.put("main", Kind.TOKEN_MAIN);
+        keywords.put("new", Kind.TOKEN_NEW);
+        keywords.put("out", Kind.TOKEN_OUT);
+        keywords.put("println", Kind.TOKEN_PRINTLN);
+        keywords.put("public", Kind.TOKEN_PUBLIC);
+        keywords.put("return", Kind.TOKEN_RETURN);
+        keywords.put("static", Kind.TOKEN_STATIC);
+        keywords.put("String", Kind.TOKEN_STRING);
+        keywords.put("System", Kind.TOKEN_SYSTEM);
+        keywords.put("this", Kind.TOKEN_THIS);
+        keywords.put("true", Kind.TOKEN_TRUE);
+        keywords.put("void", Kind.TOKEN_VOID);
+        keywords.put("while", Kind.TOKEN_WHILE);
+    }
+
+    private static Kind viaMap(ByteBuffer b, int start, int end) {
+        StringBuilder s = new StringBuilder();
+        for (int i = start; i < end; i++)
+            s.append((char) (b.get(i) & 0xff));
+        return keywords.get(s.toString());
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "test");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        // the words of all the files, as ranges of their sources
+        List<ByteBuffer> sources = new ArrayList<>();
+        List<int[]> words = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.java")) {
+            for (Path file : files) {
+                ByteBuffer b = TigerCompiler.map(file);
+                TokenBuffer tokens = new Lexer(file.toString(), b, false).scanAll();
+                for (int i = 0; i < tokens.size(); i++) {
+                    // spelled as a name: an identifier, or a keyword
+                    if (tokens.end(i) > tokens.offset(i) && Character.isLetter(b.get(tokens.offset(i))))
+                        words.add(new int[] { sources.size(), tokens.offset(i), tokens.end(i) });
+                }
+                sources.add(b);
+            }
+        }
+        int n = words.size();
+        ByteBuffer[] source = new ByteBuffer[n];
+        int[] start = new int[n];
+        int[] end = new int[n];
+        for (int i = 0; i < n; i++) {
+            int[] w = words.get(i);
+            source[i] = sources.get(w[0]);
+            start[i] = w[1];
+            end[i] = w[2];
+        }
+
+        int found = 0;
+        for (int i = 0; i < n; i++) {
+            Kind k = Lexer.keyword(source[i], start[i], end[i]);
+            if (k != viaMap(source[i], start[i], end[i])) {
+                System.out.println("the two disagree on word " + i);
+                System.exit(1);
+            }
+            if (k != null)
+                found++;
+        }
+        System.out.println(n + " words of " + dir + ", " + found + " keywords");
+
+        long bestMap = Long.MAX_VALUE;
+        long bestSwitch = Long.MAX_VALUE;
+        int sink = 0;
+        for (int run = 0; run < 10; run++) {
+            long t0 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < n; i++) {
+                    if (viaMap(source[i], start[i], end[i]) != null)
+                        sink++;
+                }
+            }
+            long t1 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < n; i++) {
+                    if (Lexer.keyword(source[i], start[i], end[i]) != null)
+                        sink--;
+                }
+            }
+            long t2 = System.nanoTime();
+            bestMap = Math.min(bestMap, t1 - t0);
+            bestSwitch = Math.min(bestSwitch, t2 - t1);
+        }
+        double total = (double) rounds * n;
+        System.out.printf("map    %.1f ns/word%nswitch %.1f ns/word%n", bestMap / total,
+                bestSwitch / total);
+        if (sink != 0)
+            System.out.println("the two disagree");
+    }
+}
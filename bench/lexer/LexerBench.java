@@ -0,0 +1,90 @@
+package lexer;
+
+import control.CompilationContext;
+import control.TigerCompiler;
+import lexer.Token.Kind;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// The throughput of the lexer on a file, the best of several runs, for
+// three ways to feed it:
+//
+//   bytewise  a BufferedInputStream handing out one byte per read, so
+//             a synchronized stream call per byte, as the lexer read
+//             its input before the block window
+//   stream    the same stream, read a window at a time
+//   mapped    the file mapped, and scanned in place
+//
+// Each run makes a Token of every token, with nextToken(), so the three
+// do the same work but for the reading.
+//
+// The benchmarks are built on the classes of src:
+//
+//   javac -cp bin -d bin bench/lexer/*.java
+//   java -cp bin lexer.LexerBench <file> [runs]
+public class LexerBench {
+    // the bytes of "in" one at a time, whatever the size asked
+    private static final class Bytewise extends FilterInputStream {
+        Bytewise(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            int c = in.read();
+            if (c < 0)
+                return -1;
+            b[off] = (byte) c;
+            return 1;
+        }
+    }
+
+    private static int lex(Lexer lexer) {
+        int n = 0;
+        while (lexer.nextToken().kind != Kind.TOKEN_EOF)
+            n++;
+        return n;
+    }
+
+    private static int run(String mode, Path file) throws IOException {
+        CompilationContext context = new CompilationContext();
+        String fname = file.toString();
+        if (mode.equals("mapped"))
+            return lex(new Lexer(context, fname, TigerCompiler.map(file)));
+        try (InputStream in = new BufferedInputStream(new FileInputStream(fname))) {
+            return lex(new Lexer(context, fname, mode.equals("bytewise") ? new Bytewise(in) : in));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java lexer.LexerBench <file> [runs]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        double mb = Files.size(file) / 1e6;
+
+        for (String mode : new String[] { "bytewise", "stream", "mapped" }) {
+            long best = Long.MAX_VALUE;
+            int tokens = 0;
+            for (int r = 0; r < runs; r++) {
+                long t0 = System.nanoTime();
+                tokens = run(mode, file);
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            System.out.printf("%-9s %d tokens, %.1f ms, %.1f Mtokens/s, %.1f MB/s%n", mode, tokens,
+                    best / 1e6, tokens * 1e3 / best, mb * 1e9 / best);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package lexer;
+
+import control.CompilationContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Check that ParallelLexer lexes into the same tokens as Lexer, on 1
+// to "threads" threads: the same kinds, offsets, ends, symbols, lines
+// and columns. Without files, it checks random sources made of pieces
+// of comments, lines and tokens, which put the split points of the
+// parallel lexer in and around comments; they are a few megabytes
+// each, as a source is split in parts of at least a megabyte.
+//
+//   java -cp bin lexer.ParallelCheck <threads> [files]
+public class ParallelCheck {
+    // the pieces of random sources, in code, in a line comment and in a
+    // block comment; in a comment, the last piece ends it
+    private static final String[][] PIECES = {
+            { "\n", " ", "x", "12", "*", "class", "int y;", "{", "}", "a = b * c;", "//", "/*" },
+            { "x", "/*", "*/", "//", " ", "*", "/", "\n" },
+            { "x", "/", "//", "/*x", "\n", " ", "12", "*/" } };
+    private static final int CODE = 0;
+    private static final int LINE = 1;
+    private static final int BLOCK = 2;
+
+    // the number of tokens which differ
+    static int compare(TokenBuffer expected, TokenBuffer got) {
+        int bad = Math.abs(expected.size() - got.size());
+        for (int i = 0; i < Math.min(expected.size(), got.size()); i++) {
+            if (expected.kind(i) != got.kind(i) || expected.offset(i) != got.offset(i)
+                    || expected.end(i) != got.end(i) || expected.symbol(i) != got.symbol(i)
+                    || !expected.token(i).toString().equals(got.token(i).toString())) {
+                if (bad++ < 3)
+                    System.out.println("  token " + i + ": " + expected.token(i) + " vs " + got.token(i));
+            }
+        }
+        return bad;
+    }
+
+    // a random source of about "n" pieces which lexes
+    private static byte[] random(Random random, int n) {
+        StringBuilder s = new StringBuilder();
+        int state = CODE;
+        for (int i = 0; i < n; i++) {
+            String[] pieces = PIECES[state];
+            int k = random.nextInt(pieces.length);
+            s.append(pieces[k]);
+            if (state != CODE && k == pieces.length - 1)
+                state = CODE;
+            else if (state == CODE && pieces[k].equals("//"))
+                state = LINE;
+            else if (state == CODE && pieces[k].equals("/*"))
+                state = BLOCK;
+        }
+        return s.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    // whether "source" lexes the same on 1 to "threads" threads
+    private static boolean check(String fname, byte[] source, int threads) {
+        TokenBuffer expected = new Lexer(fname, ByteBuffer.wrap(source), false).scanAll();
+        boolean ok = true;
+        for (int t = 1; t <= threads; t++) {
+            CompilationContext context = new CompilationContext();
+            context.lexer.threads = t;
+            TokenBuffer got = new ParallelLexer(context, fname, ByteBuffer.wrap(source)).scanAll();
+            int bad = compare(expected, got);
+            if (bad > 0) {
+                System.out.println(fname + " on " + t + " threads: " + bad + " tokens differ");
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java lexer.ParallelCheck <threads> [files]");
+            System.exit(1);
+        }
+        int threads = Integer.parseInt(args[0]);
+        boolean ok = true;
+        if (args.length > 1) {
+            for (int k = 1; k < args.length; k++)
+                ok &= check(args[k], Files.readAllBytes(Paths.get(args[k])), threads);
+        } else {
+            Random random = new Random(42);
+            for (int n = 0; n < 8; n++)
+                ok &= check("random" + n, random(random, 1_000_000 + random.nextInt(1_000_000)), threads);
+        }
+        System.out.println(ok ? "same tokens" : "tokens differ");
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,111 @@
+package parser;
+
+import control.CompilationContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Check that the parser recovers from syntax errors as it should: each
+// source below must give the errors listed with it, at those lines and
+// columns, both parsed by recursion and in the deep mode. They are
+// errors after which the parse once stopped too early and missed the
+// next ones. The files given, with errors of their own, must give the
+// same errors in both modes.
+//
+//   java -cp bin parser.RecoveryCheck [files]
+public class RecoveryCheck {
+    private static final String MAIN = "class Main {\n"
+            + "    public static void main(String[] a) {\n"
+            + "        System.out.println(new A().f());\n"
+            + "    }\n"
+            + "}\n";
+
+    // a source, then the line:column of each of its errors
+    private static final String[][] CASES = {
+            // an "else" left by the recovery from its "if"
+            { MAIN + "class A {\n"
+                    + "    int x;\n"
+                    + "    int z;\n"
+                    + "    public int f() {\n"
+                    + "        if (x < ) x = 1; else x = 2;\n"
+                    + "        while (true) { z = ; }\n"
+                    + "        return 0;\n"
+                    + "    }\n"
+                    + "    public int g() { return 1 }\n"
+                    + "    public int h() { return 2; }\n"
+                    + "}\n",
+                    "10:17", "11:28", "14:31" },
+            // a field without its ";", before a method
+            { MAIN + "class A {\n"
+                    + "    int y\n"
+                    + "    public int f() {\n"
+                    + "        x = ;\n"
+                    + "        return 0;\n"
+                    + "    }\n"
+                    + "    public int g() { return 1 }\n"
+                    + "}\n",
+                    "8:5", "9:13", "12:31" },
+            // a stray statement after the returned exp, and a stray
+            // field after the methods
+            { MAIN + "class A {\n"
+                    + "    public int f() {\n"
+                    + "        return 0;\n"
+                    + "        x = 1;\n"
+                    + "    }\n"
+                    + "    int y;\n"
+                    + "    public int g() { return 1 }\n"
+                    + "}\n",
+                    "9:9", "11:5", "12:31" } };
+
+    private static List<String> errors(String fname, byte[] source, boolean deep) {
+        CompilationContext context = new CompilationContext();
+        context.parser.deep = deep;
+        Parser parser = new Parser(context, fname, ByteBuffer.wrap(source));
+        parser.parse();
+        return parser.errors();
+    }
+
+    // the line:column of each of "errors", without the file and the
+    // message
+    private static List<String> positions(List<String> errors) {
+        List<String> positions = new ArrayList<>();
+        for (String e : errors) {
+            String[] parts = e.split(":");
+            positions.add(parts[parts.length - 3] + ":" + parts[parts.length - 2]);
+        }
+        return positions;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean ok = true;
+        for (int c = 0; c < CASES.length; c++) {
+            byte[] source = CASES[c][0].getBytes(StandardCharsets.ISO_8859_1);
+            List<String> expected = new ArrayList<>();
+            for (int k = 1; k < CASES[c].length; k++)
+                expected.add(CASES[c][k]);
+            for (boolean deep : new boolean[] { false, true }) {
+                List<String> got = errors("case" + c, source, deep);
+                if (!positions(got).equals(expected)) {
+                    System.out.println("case " + c + (deep ? " (deep)" : "") + ": " + got + ", expected at "
+                            + expected);
+                    ok = false;
+                }
+            }
+        }
+        for (String fname : args) {
+            byte[] source = Files.readAllBytes(Paths.get(fname));
+            List<String> recursive = errors(fname, source, false);
+            if (!recursive.equals(errors(fname, source, true))) {
+                System.out.println(fname + ": not the same errors in the deep mode");
+                ok = false;
+            }
+        }
+        System.out.println(ok ? "all errors found" : "errors missed");
+        System.exit(ok ? 0 : 1);
+    }
+}
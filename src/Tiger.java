@@ -1,80 +1,285 @@
-import control.CommandLine;
-import control.Control;
-import lexer.Lexer;
-import lexer.Token;
-import parser.Parser;
-
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
-import java.io.InputStream;
-
-public class Tiger
-{
-  public static void main(String[] args)
-  {
-    InputStream fstream;
-    Parser parser;
-
-    // ///////////////////////////////////////////////////////
-    // handle command line arguments
-    CommandLine cmd = new CommandLine();
-    String fname = cmd.scan(args);
-
-    // /////////////////////////////////////////////
-    // the straight-line interpreter (and compiler)    
-    switch (Control.ConSlp.action){
-    case NONE:
-      //System.exit(0);
-      break;
-    default:
-      slp.Main slpmain = new slp.Main();
-      if (Control.ConSlp.div) {
-        slpmain.doit(slp.Samples.dividebyzero);
-        System.exit(0);
-      }
-      slpmain.doit(slp.Samples.prog);
-      System.exit(0);
-    }
-
-    
-    if (fname == null) {
-      cmd.usage();
-      return;
-    }
-
-    // /////////////////////////////////////////////////////
-    // it would be helpful to be able to test the lexer
-    // independently.
-    if (Control.ConLexer.test) {
-      System.out.println("Testing the lexer. All tokens:");
-      try {
-        fstream = new BufferedInputStream(new FileInputStream(fname));
-        Lexer lexer = new Lexer(fname, fstream);
-        Token token = lexer.nextToken();
-        while (token.kind != Token.Kind.TOKEN_EOF) {
-          System.out.println(token.toString());
-          token = lexer.nextToken();
-        }
-        fstream.close();
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-      System.exit(1);
-    }
-
-    // /////////////////////////////////////////////////////////
-    // normal compilation phases.
-    try {
-      fstream = new BufferedInputStream(new FileInputStream(fname));
-      parser = new Parser(fname, fstream);
-
-      parser.parse();
-
-      fstream.close();
-    } catch (Exception e) {
-      e.printStackTrace();
-      System.exit(1);
-    }
-    return;
-  }
-}
+import control.CommandLine;
+import control.CompileServer;
+import control.CompilationContext;
+import control.Control;
+import control.TigerCompiler;
+import lexer.LexError;
+import lexer.Lexer;
+import lexer.ParallelLexer;
+import lexer.TokenBuffer;
+import lexer.TokenWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class Tiger
+{
+  // the files to compile: those named, and the .java files under the
+  // directories named, in the order of their paths. The files found
+  // are named from the directory as it was named.
+  private static List<String> expand(CompilationContext context,
+      List<String> names) throws IOException
+  {
+    List<String> files = new ArrayList<>();
+    for (String name : names) {
+      Path path = context.resolve(name);
+      if (!Files.isDirectory(path)) {
+        files.add(name);
+        continue;
+      }
+      Path shown = Paths.get(name);
+      try (Stream<Path> walk = Files.walk(path)) {
+        files.addAll(walk
+            .filter(p -> p.toString().endsWith(".java") && Files.isRegularFile(p))
+            .sorted().map(p -> shown.resolve(path.relativize(p)).toString())
+            .collect(Collectors.toList()));
+      }
+    }
+    return files;
+  }
+
+  // the pool to compile files on: "jobs" threads, or for 0, a virtual
+  // thread per file when the JVM has them (looked up by reflection, so
+  // that the compiler still runs on older JVMs), else a thread per
+  // processor. The JVM measures no CPU time or allocation for virtual
+  // threads, so -verbose-timing takes a thread per processor too.
+  private static ExecutorService pool(CompilationContext context)
+  {
+    int jobs = context.batch.jobs;
+    if (jobs == 0 && context.timing.enabled())
+      jobs = Runtime.getRuntime().availableProcessors();
+    if (jobs == 0) {
+      try {
+        return (ExecutorService) Executors.class.getMethod(
+            "newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+        jobs = Runtime.getRuntime().availableProcessors();
+      }
+    }
+    return Executors.newFixedThreadPool(jobs);
+  }
+
+  // /////////////////////////////////////////////////////
+  // it would be helpful to be able to test the lexer
+  // independently.
+  private static void testLexer(CompilationContext context, String fname)
+  {
+    PrintStream out = context.out;
+    if (context.lexer.format == Control.ConLexer.Format.TEXT)
+      out.println("Testing the lexer. All tokens:");
+    try {
+      TokenBuffer tokens;
+      ByteBuffer source = TigerCompiler.map(context.resolve(fname));
+      if (context.lexer.threads > 1)
+        tokens = new ParallelLexer(context, fname, source).tokenize();
+      else
+        tokens = new Lexer(context, fname, source).tokenize();
+      // all but the TOKEN_EOF
+      new TokenWriter(out, context.lexer.format).write(tokens, 0,
+          tokens.size() - 1);
+    } catch (LexError e) {
+      out.println(e.getMessage());
+    } catch (Exception e) {
+      e.printStackTrace(out);
+    }
+  }
+
+  // /////////////////////////////////////////////////////////
+  // normal compilation phases. Return whether they succeeded.
+  private static boolean compile(CompilationContext context, String fname)
+  {
+    PrintStream out = context.out;
+    TigerCompiler.Result result;
+
+    try {
+      result = TigerCompiler.compile(context, fname,
+          TigerCompiler.map(context.resolve(fname)));
+    } catch (Exception e) {
+      e.printStackTrace(out);
+      return false;
+    }
+    if (!result.ok()) {
+      for (String error : result.diagnostics())
+        out.println(error);
+      if (result.lexicalErrors() > 0)
+        out.println(result.lexicalErrors()
+            + " lexical error(s): compilation aborting...");
+      if (result.syntaxErrors() > 0)
+        out.println(result.syntaxErrors()
+            + " syntax error(s): compilation aborting...");
+      return false;
+    }
+    return true;
+  }
+
+  // the lexer test or the compilation of one file
+  private static boolean run(CompilationContext context, String fname)
+  {
+    if (context.lexer.test) {
+      testLexer(context, fname);
+      return false;
+    }
+    return compile(context, fname);
+  }
+
+  // Compile all the files, on a pool of threads, each in a context
+  // forked from "context". The output of each file is kept apart, and
+  // printed in the order of the files once it is complete, so it is
+  // the same as compiled one at a time. A file whose compile throws (a
+  // bug, or a StackOverflowError on a deeply nested program) is
+  // reported and fails alone. Return whether all of them succeeded.
+  private static boolean runAll(CompilationContext context,
+      List<String> files)
+  {
+    if (context.batch.jobs == 1) {
+      boolean ok = true;
+      for (String fname : files) {
+        try {
+          ok &= run(context.fork(context.out), fname);
+        } catch (RuntimeException | Error e) {
+          e.printStackTrace(context.out);
+          ok = false;
+        }
+      }
+      return ok;
+    }
+
+    ExecutorService pool = pool(context);
+    try {
+      List<ByteArrayOutputStream> outputs = new ArrayList<>();
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (String fname : files) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CompilationContext file = context.fork(new PrintStream(output));
+        outputs.add(output);
+        results.add(pool.submit(() -> run(file, fname)));
+      }
+
+      boolean ok = true;
+      for (int i = 0; i < files.size(); i++) {
+        try {
+          ok &= results.get(i).get();
+        } catch (ExecutionException e) {
+          outputs.get(i).writeTo(context.out);
+          e.getCause().printStackTrace(context.out);
+          ok = false;
+          continue;
+        }
+        outputs.get(i).writeTo(context.out);
+      }
+      context.out.flush();
+      return ok;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (IOException e) {
+      e.printStackTrace(context.out);
+      return false;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // Run the command line "args" in "context", and return the exit
+  // status. The lexer test always fails.
+  private static int command(CompilationContext context, String[] args)
+  {
+    // ///////////////////////////////////////////////////////
+    // handle command line arguments
+    CommandLine cmd = new CommandLine(context);
+    List<String> fnames;
+    try {
+      fnames = cmd.scan(args);
+    } catch (IllegalArgumentException e) {
+      return 1;
+    }
+
+    int status = execute(context, cmd, fnames);
+    if (context.timing.enabled())
+      context.timing.print(context.out);
+    return status;
+  }
+
+  // the slp programs, or the files named, compiled; return the exit
+  // status
+  private static int execute(CompilationContext context, CommandLine cmd,
+      List<String> fnames)
+  {
+    // /////////////////////////////////////////////
+    // the straight-line interpreter (and compiler)
+    switch (context.slp.action){
+    case NONE:
+      break;
+    default:
+      slp.Main slpmain = new slp.Main(context);
+      if (context.slp.div)
+        return slpmain.doit(slp.Samples.dividebyzero) ? 0 : 1;
+      return slpmain.doit(slp.Samples.prog) ? 0 : 1;
+    }
+
+    if (fnames.isEmpty()) {
+      cmd.usage();
+      return 0;
+    }
+
+    // /////////////////////////////////////////////////////////
+    // the files named, or under the directories named, compiled
+    // together in this JVM
+    List<String> files;
+    try {
+      files = expand(context, fnames);
+    } catch (IOException e) {
+      e.printStackTrace(context.out);
+      return 1;
+    }
+    if (files.size() == 1)
+      return run(context, files.get(0)) ? 0 : 1;
+    return runAll(context, files) && !context.lexer.test ? 0 : 1;
+  }
+
+  public static void main(String[] args)
+  {
+    CompilationContext context = new CompilationContext();
+    List<String> all = Arrays.asList(args);
+    if (!all.contains("-server")) {
+      System.exit(command(context, args));
+      return;
+    }
+
+    // /////////////////////////////////////////////////////////
+    // the compile server: each request is a command line of its own,
+    // in a context of its own
+    try {
+      new CommandLine(context).scan(args);
+    } catch (IllegalArgumentException e) {
+      System.exit(1);
+    }
+    CompileServer server = new CompileServer(context.server.port, (c, a) -> {
+      if (Arrays.asList(a).contains("-server")) {
+        c.out.println("-server: not in a request to the server");
+        return 1;
+      }
+      return command(c, a);
+    });
+    try {
+      server.serve();
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,413 @@
+package ast;
+
+import util.Symbol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// The abstract syntax tree of a program, stored flat: a node is an
+// index, and its kind, source offset and slots are entries of a few
+// primitive arrays, instead of one object per node. The slots of a
+// node are its children (node indices), names (indices in the name
+// table of the tree), or the value of a number, as listed for each
+// kind below.
+//
+// The tree is built bottom-up, as the parser returns from its
+// methods: the slots of a node are pushed first, then the node is
+// made from them. So the children of a node come before it, and the
+// slots of node i are those from first[i] up to first[i + 1]. The
+// only exception are the bodies of methods parsed lazily: they are
+// parsed after the whole tree, and come after their METHOD.
+//
+// Names are numbered in the tree, and offsets are offsets in the
+// source, so that a tree stands on its own, without the tokens or
+// the symbol table it was built with.
+public class Ast {
+    public enum Kind {
+        // declarations
+        PROGRAM, // main class, class*
+        MAIN_CLASS, // name, name of the argument, statement
+        CLASS, // name, name of the superclass or NONE, LIST of fields, LIST of methods
+        METHOD, // return type, name, LIST of formals, LIST of locals, LIST of statements, returned exp;
+                // the last three are NONE until a body skipped by a lazy parse is parsed
+        VAR_DECL, // type, name
+        LIST, // element*
+
+        // types
+        INT, // no slot
+        INT_ARRAY, // no slot
+        BOOLEAN, // no slot
+        CLASS_TYPE, // name
+
+        // statements
+        BLOCK, // statement*
+        IF, // condition, then, else
+        WHILE, // condition, body
+        PRINT, // exp
+        ASSIGN, // name, exp
+        ARRAY_ASSIGN, // name, index, exp
+
+        // expressions
+        AND, // left, right
+        LT, // left, right
+        ADD, // left, right
+        SUB, // left, right
+        TIMES, // left, right
+        NOT, // exp
+        ARRAY_SELECT, // array, index
+        LENGTH, // array
+        CALL, // object, method name, argument*
+        NUM, // value
+        TRUE, // no slot
+        FALSE, // no slot
+        THIS, // no slot
+        ID, // name
+        NEW_INT_ARRAY, // length
+        NEW_OBJECT, // class name
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    public static final int NONE = -1; // an absent name or node
+
+    // what the slots of each kind are, as listed above, by
+    // Kind.ordinal(): the last one repeats for the slots after it
+    private static final byte NODE = 0;
+    private static final byte NAME = 1;
+    private static final byte VALUE = 2;
+    private static final byte[][] LAYOUT = new byte[KINDS.length][];
+
+    static {
+        layout(Kind.PROGRAM, NODE);
+        layout(Kind.MAIN_CLASS, NAME, NAME, NODE);
+        layout(Kind.CLASS, NAME, NAME, NODE, NODE);
+        layout(Kind.METHOD, NODE, NAME, NODE, NODE, NODE, NODE);
+        layout(Kind.VAR_DECL, NODE, NAME);
+        layout(Kind.LIST, NODE);
+        layout(Kind.INT);
+        layout(Kind.INT_ARRAY);
+        layout(Kind.BOOLEAN);
+        layout(Kind.CLASS_TYPE, NAME);
+        layout(Kind.BLOCK, NODE);
+        layout(Kind.IF, NODE, NODE, NODE);
+        layout(Kind.WHILE, NODE, NODE);
+        layout(Kind.PRINT, NODE);
+        layout(Kind.ASSIGN, NAME, NODE);
+        layout(Kind.ARRAY_ASSIGN, NAME, NODE, NODE);
+        layout(Kind.AND, NODE, NODE);
+        layout(Kind.LT, NODE, NODE);
+        layout(Kind.ADD, NODE, NODE);
+        layout(Kind.SUB, NODE, NODE);
+        layout(Kind.TIMES, NODE, NODE);
+        layout(Kind.NOT, NODE);
+        layout(Kind.ARRAY_SELECT, NODE, NODE);
+        layout(Kind.LENGTH, NODE);
+        layout(Kind.CALL, NODE, NAME, NODE);
+        layout(Kind.NUM, VALUE);
+        layout(Kind.TRUE);
+        layout(Kind.FALSE);
+        layout(Kind.THIS);
+        layout(Kind.ID, NAME);
+        layout(Kind.NEW_INT_ARRAY, NODE);
+        layout(Kind.NEW_OBJECT, NAME);
+    }
+
+    private static void layout(Kind kind, byte... slots) {
+        LAYOUT[kind.ordinal()] = slots;
+    }
+
+    private byte[] kinds; // Kind.ordinal() of each node
+    private int[] offsets; // offset in the source of the first token of each node
+    private int[] first; // first[i] is the index in "slots" of the slots of node i
+    private int size = 0;
+    private int[] slots;
+    private int used = 0; // slots[0, used) are those of the nodes made
+    private int root = NONE;
+
+    private int[] stack = new int[64]; // slots pushed for the next nodes
+    private int top = 0;
+
+    private Symbol[] names = new Symbol[64];
+    private int nameCount = 0;
+    // the names by Symbol.hashCode(), open addressed: name index + 1,
+    // or 0 for a free slot; at most half full
+    private int[] nameOf = new int[128];
+
+    // an empty tree, with room for about "capacity" nodes
+    public Ast(int capacity) {
+        capacity = Math.max(16, capacity);
+        this.kinds = new byte[capacity];
+        this.offsets = new int[capacity];
+        this.first = new int[capacity + 1];
+        this.slots = new int[capacity * 2];
+    }
+
+    // ////////////////////////////////////////////////
+    // building, by the parser
+
+    // the number of slots pushed so far, to be given to make()
+    // once the slots of a node have been pushed
+    public int mark() {
+        return top;
+    }
+
+    public void push(int slot) {
+        if (top == stack.length)
+            stack = Arrays.copyOf(stack, top * 2);
+        stack[top++] = slot;
+    }
+
+    // pop the slot pushed last
+    public int pop() {
+        return stack[--top];
+    }
+
+    // pop the slots pushed since "mark", for a node given up
+    public void popTo(int mark) {
+        top = mark;
+    }
+
+    // Make a node of the slots pushed since "mark", and pop them.
+    // Return the node.
+    public int make(Kind kind, int offset, int mark) {
+        int n = top - mark;
+        room(n);
+        System.arraycopy(stack, mark, slots, used, n);
+        used += n;
+        top = mark;
+        return made(kind, offset);
+    }
+
+    // nodes of a fixed number of slots, written in place
+    public int node(Kind kind, int offset) {
+        room(0);
+        return made(kind, offset);
+    }
+
+    public int node(Kind kind, int offset, int a) {
+        room(1);
+        slots[used++] = a;
+        return made(kind, offset);
+    }
+
+    public int node(Kind kind, int offset, int a, int b) {
+        room(2);
+        slots[used++] = a;
+        slots[used++] = b;
+        return made(kind, offset);
+    }
+
+    public int node(Kind kind, int offset, int a, int b, int c) {
+        room(3);
+        slots[used++] = a;
+        slots[used++] = b;
+        slots[used++] = c;
+        return made(kind, offset);
+    }
+
+    // make room for one more node, of "n" slots (a decoded tree is
+    // full to the last node)
+    private void room(int n) {
+        if (size + 1 >= kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+            first = Arrays.copyOf(first, size * 2 + 1);
+        }
+        if (used + n > slots.length)
+            slots = Arrays.copyOf(slots, Math.max(slots.length * 2, used + n));
+    }
+
+    // the node whose slots were just written, up to "used"
+    private int made(Kind kind, int offset) {
+        kinds[size] = (byte) kind.ordinal();
+        offsets[size] = offset;
+        first[size + 1] = used;
+        return size++;
+    }
+
+    // Set the k-th slot of "node", which was made with it NONE: for
+    // the body of a method parsed later than the method itself.
+    public void set(int node, int k, int slot) {
+        slots[first[node] + k] = slot;
+    }
+
+    // Append all the nodes of "other", with their slots renumbered to
+    // this tree, and return "base": node n of "other" is node base + n
+    // here. The names of "other" are interned here.
+    public int append(Ast other) {
+        int base = size;
+        int[] renamed = new int[other.nameCount];
+        for (int i = 0; i < other.nameCount; i++)
+            renamed[i] = intern(other.names[i]);
+        for (int n = 0; n < other.size; n++) {
+            int from = other.first[n];
+            int arity = other.first[n + 1] - from;
+            byte[] layout = LAYOUT[other.kinds[n]];
+            room(arity);
+            for (int k = 0; k < arity; k++) {
+                int slot = other.slots[from + k];
+                if (slot != NONE) {
+                    byte what = layout[Math.min(k, layout.length - 1)];
+                    if (what == NODE)
+                        slot += base;
+                    else if (what == NAME)
+                        slot = renamed[slot];
+                }
+                slots[used++] = slot;
+            }
+            kinds[size] = other.kinds[n];
+            offsets[size] = other.offsets[n];
+            first[size + 1] = used;
+            size++;
+        }
+        return base;
+    }
+
+    // once the whole program is parsed
+    public void setRoot(int node) {
+        root = node;
+    }
+
+    // the index of "symbol" in the name table, added if new
+    public int intern(Symbol symbol) {
+        int mask = nameOf.length - 1;
+        int at = home(symbol.hashCode(), mask);
+        for (; nameOf[at] != 0; at = (at + 1) & mask) {
+            if (names[nameOf[at] - 1] == symbol)
+                return nameOf[at] - 1;
+        }
+        if (nameCount == names.length)
+            names = Arrays.copyOf(names, nameCount * 2);
+        int i = nameCount++;
+        names[i] = symbol;
+        nameOf[at] = i + 1;
+        if (2 * nameCount > nameOf.length)
+            rehash();
+        return i;
+    }
+
+    private static int home(int hash, int mask) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void rehash() {
+        nameOf = new int[nameOf.length * 2];
+        int mask = nameOf.length - 1;
+        for (int i = 0; i < nameCount; i++) {
+            int at = home(names[i].hashCode(), mask);
+            while (nameOf[at] != 0)
+                at = (at + 1) & mask;
+            nameOf[at] = i + 1;
+        }
+    }
+
+    // ////////////////////////////////////////////////
+    // reading
+
+    // the number of nodes
+    public int size() {
+        return size;
+    }
+
+    // the root, a PROGRAM, or NONE before the whole program is parsed
+    public int root() {
+        return root;
+    }
+
+    public Kind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public int offset(int node) {
+        return offsets[node];
+    }
+
+    // the number of slots of "node"
+    public int arity(int node) {
+        return first[node + 1] - first[node];
+    }
+
+    // the k-th slot of "node", from 0
+    public int slot(int node, int k) {
+        return slots[first[node] + k];
+    }
+
+    // the number of names
+    public int names() {
+        return nameCount;
+    }
+
+    // the name of index "name"
+    public Symbol name(int name) {
+        return names[name];
+    }
+
+    // ////////////////////////////////////////////////
+    // the binary form, for AstCache: the number of nodes, of slots and
+    // of names, and the root; the kinds, a byte each; the offsets, the
+    // slot starts and the slots, an int each; then each name, as its
+    // length and its bytes (names are Latin-1, as lexed)
+
+    // the number of bytes of the binary form
+    int encodedSize() {
+        int n = 16 + size + 4 * size + 4 * (size + 1) + 4 * used;
+        for (int i = 0; i < nameCount; i++)
+            n += 4 + names[i].name.length();
+        return n;
+    }
+
+    void encode(ByteBuffer out) {
+        out.putInt(size);
+        out.putInt(used);
+        out.putInt(nameCount);
+        out.putInt(root);
+        out.put(kinds, 0, size);
+        out.asIntBuffer().put(offsets, 0, size);
+        out.position(out.position() + 4 * size);
+        out.asIntBuffer().put(first, 0, size + 1);
+        out.position(out.position() + 4 * (size + 1));
+        out.asIntBuffer().put(slots, 0, used);
+        out.position(out.position() + 4 * used);
+        for (int i = 0; i < nameCount; i++) {
+            String name = names[i].name;
+            out.putInt(name.length());
+            for (int k = 0; k < name.length(); k++)
+                out.put((byte) name.charAt(k));
+        }
+    }
+
+    // The tree of a binary form. The names are interned again, those
+    // known already without building a String. A form cut short, or
+    // not one, throws an IllegalArgumentException or a
+    // BufferUnderflowException.
+    static Ast decode(ByteBuffer in) {
+        int size = in.getInt();
+        int used = in.getInt();
+        int nameCount = in.getInt();
+        if (size < 0 || used < 0 || nameCount < 0
+                || 9L * size + 4L * used + 4L * nameCount > in.remaining())
+            throw new IllegalArgumentException("not a tree");
+        Ast ast = new Ast(size);
+        ast.root = in.getInt();
+        in.get(ast.kinds, 0, size);
+        in.asIntBuffer().get(ast.offsets, 0, size);
+        in.position(in.position() + 4 * size);
+        in.asIntBuffer().get(ast.first, 0, size + 1);
+        in.position(in.position() + 4 * (size + 1));
+        ast.slots = new int[used];
+        in.asIntBuffer().get(ast.slots, 0, used);
+        in.position(in.position() + 4 * used);
+        ast.size = size;
+        ast.used = used;
+        for (int i = 0; i < nameCount; i++) {
+            int length = in.getInt();
+            int start = in.position();
+            int h = 0;
+            for (int k = start; k < start + length; k++)
+                h = Symbol.hash(h, in.get(k) & 0xff);
+            ast.intern(Symbol.symbol(in, start, start + length, h));
+            in.position(start + length);
+        }
+        return ast;
+    }
+}
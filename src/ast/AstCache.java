@@ -0,0 +1,107 @@
+package ast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// A cache on disk of the trees of the sources compiled, so that a
+// source compiled before is neither lexed nor parsed again.
+//
+// A tree is kept in a file of the cache directory named after its key,
+// the SHA-256 of VERSION and of the bytes of the source: a source
+// edited, or a compiler whose trees differ, has another key. The file
+// is the bytes "TAST", the key, then the binary form of the tree (see
+// Ast.encode()). It is read through a memory map, and written to a
+// temporary file first, then moved in place, so that compilers
+// sharing a cache never read half a file.
+//
+// Only the trees of whole programs without errors are worth caching.
+public class AstCache {
+    // to be changed whenever the parser or the tree changes in a way
+    // which changes the trees of the same source
+    public static final String VERSION = "tiger-ast-1";
+
+    private static final int MAGIC = 0x54415354; // "TAST"
+    private static final int KEY_SIZE = 32;
+
+    private final Path dir;
+
+    public AstCache(String dir) {
+        this.dir = Paths.get(dir);
+    }
+
+    // the key of the bytes [position, limit) of "source"
+    public byte[] key(ByteBuffer source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // every JDK has SHA-256
+        }
+        digest.update(VERSION.getBytes(StandardCharsets.ISO_8859_1));
+        digest.update(source.duplicate());
+        return digest.digest();
+    }
+
+    private Path file(byte[] key) {
+        StringBuilder name = new StringBuilder(2 * KEY_SIZE + 4);
+        for (byte b : key) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16));
+            name.append(Character.forDigit(b & 0xf, 16));
+        }
+        return dir.resolve(name.append(".ast").toString());
+    }
+
+    // The tree cached for "key", or null if there is none, or it
+    // cannot be read.
+    public Ast load(byte[] key) {
+        try (FileChannel channel = FileChannel.open(file(key), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC)
+                return null;
+            for (byte b : key)
+                if (in.get() != b)
+                    return null;
+            return Ast.decode(in);
+        } catch (IOException | RuntimeException e) {
+            // absent, unreadable or cut short: it is written again
+            // after the parse
+            return null;
+        }
+    }
+
+    // Cache "ast" under "key". A tree that cannot be written is left
+    // out: it is parsed again next time.
+    public void store(byte[] key, Ast ast) {
+        ByteBuffer out = ByteBuffer.allocate(4 + KEY_SIZE + ast.encodedSize());
+        out.putInt(MAGIC);
+        out.put(key);
+        ast.encode(out);
+        out.flip();
+        Path tmp = null;
+        try {
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, "ast", ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining())
+                    channel.write(out);
+            }
+            Files.move(tmp, file(key), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            try {
+                if (tmp != null)
+                    Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -1,210 +1,265 @@
-package control;
-
-import java.util.LinkedList;
-
-import util.Bug;
-import control.Control.ConSlp;
-
-public class CommandLine
-{
-  static interface F<X>
-  {
-    public void f(X x);
-  }
-
-  static enum Kind
-  {
-    Empty, Bool, Int, String, StringList,
-  }
-
-  static class Arg<X>
-  {
-    String name;
-    String option;
-    String desription;
-    Kind kind;
-    F<X> action;
-
-    public Arg(String name, String option, String description, Kind kind,
-        F<X> action)
-    {
-      this.name = name;
-      this.option = option;
-      this.desription = description;
-      this.kind = kind;
-      this.action = action;
-    }
-  }
-
-  private LinkedList<Arg<Object>> args;
-
-  @SuppressWarnings("unchecked")
-  public CommandLine()
-  {
-    this.args = new util.Flist<Arg<Object>>().list(new Arg<Object>("help",
-        null, "show this help information", Kind.Empty, (s) -> {
-          usage();
-          System.exit(1);
-          return;
-        }), new Arg<Object>("lex", null, "dump the result of lexical analysis",
-        Kind.Empty, (s) -> {
-          Control.ConLexer.dump = true;
-          return;
-        }), new Arg<Object>("slp", "{args|interp|compile}",
-        "run the SLP interpreter", Kind.String, (ss) -> {
-          String s = (String) ss;
-
-          if (s.equals("args")) {
-            ConSlp.action = ConSlp.T.ARGS;
-          } else if (s.equals("interp"))
-            ConSlp.action = ConSlp.T.INTERP;
-          else if (s.equals("compile"))
-            ConSlp.action = ConSlp.T.COMPILE;
-          else if (s.equals("div"))
-            ConSlp.div = true;
-          else if (s.equals("keepasm"))
-            ConSlp.keepasm = true;
-          else {
-            System.out.println("bad argument: " + s);
-            output();
-            System.exit(1);
-          }
-          return;
-        }), new Arg<Object>("testlexer", null,
-        "whether or not to test the lexer", Kind.Empty, (s) -> {
-          Control.ConLexer.test = true;
-          return;
-        }));
-  }
-
-  // scan the command line arguments, return the file name
-  // in it. The file name should be unique.
-  public String scan(String[] cargs)
-  {
-    String filename = null;
-
-    for (int i = 0; i < cargs.length; i++) {
-      if (!cargs[i].startsWith("-")) {
-        if (filename == null) {
-          filename = cargs[i];
-          continue;
-        } else {
-          System.out.println("Error: can only compile one Java file a time");
-          System.exit(1);
-        }
-      } else {
-      }
-
-      boolean found = false;
-      for (Arg<Object> arg : this.args) {
-        if (!arg.name.equals(cargs[i].substring(1)))
-          continue;
-
-        found = true;
-        switch (arg.kind) {
-        case Empty:
-          arg.action.f(null);
-          break;
-        default:
-          if (i >= cargs.length - 1) {
-            System.out.println("Error: "+cargs[i] + ": requires an argument");
-            this.output();
-            System.exit(1);
-          }
-          i++;
-          break;
-        }
-
-        String theArg = cargs[i];
-        switch (arg.kind) {
-        case Bool:
-          if (theArg.equals("true"))
-            arg.action.f(new Boolean(true));
-          else if (theArg.equals("false"))
-            arg.action.f(new Boolean(false));
-          else {
-            System.out.println("Error: "+arg.name + ": requires a boolean");
-            this.output();
-            System.exit(1);
-          }
-          break;
-        case Int:
-          int num = 0;
-          try {
-            num = Integer.parseInt(theArg);
-          } catch (java.lang.NumberFormatException e) {
-            System.out.println("Error: "+arg.name + ": requires an integer");
-            this.output();
-            System.exit(1);
-          }
-          arg.action.f(num);
-          break;
-        case String:
-          arg.action.f(theArg);
-          break;
-        case StringList:
-          String[] strArray = theArg.split(",");
-          arg.action.f(strArray);
-          break;
-        default:
-          break;
-        }
-        break;
-      }
-      if (!found) {
-        System.out.println("invalid option: " + cargs[i]);
-        this.output();
-        System.exit(1);
-      }
-    }
-    return filename;
-  }
-
-  private void outputSpace(int n)
-  {
-    if (n < 0)
-      new Bug();
-
-    while (n-- != 0)
-      System.out.print(" ");
-    return;
-  }
-
-  public void output()
-  {
-    int max = 0;
-    for (Arg<Object> a : this.args) {
-      int current = a.name.length();
-      if (a.option != null)
-        current += a.option.length();
-      else
-        ;
-      if (current > max)
-        max = current;
-      else
-        ;
-    }
-    System.out.println("Available options:");
-    for (Arg<Object> a : this.args) {
-      int current = a.name.length();
-      System.out.print("   -" + a.name + " ");
-      if (a.option != null) {
-        current += a.option.length();
-        System.out.print(a.option);
-      } else
-        ;
-      outputSpace(max - current + 1);
-      System.out.println(a.desription);
-    }
-    return;
-  }
-
-  public void usage()
-  {
-    System.out
-        .println("The Tiger compiler. Copyright (C) 2013-, SSE of USTC.\n"
-            + "Usage: java Tiger [options] <filename>\n");
-    output();
-    return;
-  }
-}
+package control;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import util.Bug;
+import control.Control.ConSlp;
+
+public class CommandLine
+{
+  static interface F<X>
+  {
+    public void f(X x);
+  }
+
+  static enum Kind
+  {
+    Empty, Bool, Int, String, StringList,
+  }
+
+  static class Arg<X>
+  {
+    String name;
+    String option;
+    String desription;
+    Kind kind;
+    F<X> action;
+
+    public Arg(String name, String option, String description, Kind kind,
+        F<X> action)
+    {
+      this.name = name;
+      this.option = option;
+      this.desription = description;
+      this.kind = kind;
+      this.action = action;
+    }
+  }
+
+  private LinkedList<Arg<Object>> args;
+  private final CompilationContext context;
+
+  // the options scanned are set in "context"
+  @SuppressWarnings("unchecked")
+  public CommandLine(CompilationContext context)
+  {
+    this.context = context;
+    this.args = new util.Flist<Arg<Object>>().list(new Arg<Object>("astcache",
+        "<dir>", "cache the trees parsed in dir, to skip parsing them again",
+        Kind.String, (s) -> {
+          context.parser.cache = (String) s;
+          return;
+        }), new Arg<Object>("deep",
+        null, "parse deeply nested programs without recursion", Kind.Empty,
+        (s) -> {
+          context.parser.deep = true;
+          return;
+        }), new Arg<Object>("help",
+        null, "show this help information", Kind.Empty, (s) -> {
+          usage();
+          throw new IllegalArgumentException("-help");
+        }), new Arg<Object>("jobs", "<n>",
+        "compile n files at a time (0: as many as the machine runs)", Kind.Int,
+        (n) -> {
+          if ((Integer) n < 0)
+            throw error("Error: jobs: requires an integer >= 0");
+          context.batch.jobs = (Integer) n;
+          return;
+        }), new Arg<Object>("lazy", null,
+        "parse class and method headers only, skip method bodies", Kind.Empty,
+        (s) -> {
+          context.parser.lazy = true;
+          return;
+        }), new Arg<Object>("lex", null, "dump the result of lexical analysis",
+        Kind.Empty, (s) -> {
+          context.lexer.dump = true;
+          return;
+        }), new Arg<Object>("lexformat", "{text|tsv|bin}",
+        "format of the tokens dumped by -lex and -testlexer", Kind.String, (ss) -> {
+          String s = (String) ss;
+
+          if (s.equals("text"))
+            context.lexer.format = Control.ConLexer.Format.TEXT;
+          else if (s.equals("tsv"))
+            context.lexer.format = Control.ConLexer.Format.TSV;
+          else if (s.equals("bin"))
+            context.lexer.format = Control.ConLexer.Format.BIN;
+          else {
+            throw error("bad argument: " + s);
+          }
+          return;
+        }), new Arg<Object>("lexthreads", "<n>",
+        "lex large files on n threads", Kind.Int, (n) -> {
+          if ((Integer) n < 1)
+            throw error("Error: lexthreads: requires an integer >= 1");
+          context.lexer.threads = (Integer) n;
+          return;
+        }), new Arg<Object>("parsethreads", "<n>",
+        "parse the classes of large files on n threads", Kind.Int, (n) -> {
+          if ((Integer) n < 1)
+            throw error("Error: parsethreads: requires an integer >= 1");
+          context.parser.threads = (Integer) n;
+          return;
+        }), new Arg<Object>("server", "<port>",
+        "stay up and compile what control.CompileClient sends to port",
+        Kind.Int, (n) -> {
+          context.server.port = (Integer) n;
+          return;
+        }), new Arg<Object>("slp", "{args|interp|compile}",
+        "run the SLP interpreter", Kind.String, (ss) -> {
+          String s = (String) ss;
+
+          if (s.equals("args")) {
+            context.slp.action = ConSlp.T.ARGS;
+          } else if (s.equals("interp"))
+            context.slp.action = ConSlp.T.INTERP;
+          else if (s.equals("compile"))
+            context.slp.action = ConSlp.T.COMPILE;
+          else if (s.equals("div"))
+            context.slp.div = true;
+          else if (s.equals("keepasm"))
+            context.slp.keepasm = true;
+          else {
+            throw error("bad argument: " + s);
+          }
+          return;
+        }), new Arg<Object>("testlexer", null,
+        "whether or not to test the lexer", Kind.Empty, (s) -> {
+          context.lexer.test = true;
+          return;
+        }), new Arg<Object>("verbose-timing", null,
+        "print the time and memory spent in each phase", Kind.Empty, (s) -> {
+          context.timing.enable();
+          return;
+        }));
+  }
+
+  // Print "message" and the options. The exception returned ends the
+  // scan, for the caller to exit.
+  private IllegalArgumentException error(String message)
+  {
+    context.out.println(message);
+    output();
+    return new IllegalArgumentException(message);
+  }
+
+  // scan the command line arguments, return the names of the files
+  // and directories in it, in order. Throw IllegalArgumentException
+  // once an error, or the help, is printed.
+  public List<String> scan(String[] cargs)
+  {
+    List<String> filenames = new ArrayList<>();
+
+    for (int i = 0; i < cargs.length; i++) {
+      if (!cargs[i].startsWith("-")) {
+        filenames.add(cargs[i]);
+        continue;
+      }
+
+      boolean found = false;
+      for (Arg<Object> arg : this.args) {
+        if (!arg.name.equals(cargs[i].substring(1)))
+          continue;
+
+        found = true;
+        switch (arg.kind) {
+        case Empty:
+          arg.action.f(null);
+          break;
+        default:
+          if (i >= cargs.length - 1) {
+            throw error("Error: "+cargs[i] + ": requires an argument");
+          }
+          i++;
+          break;
+        }
+
+        String theArg = cargs[i];
+        switch (arg.kind) {
+        case Bool:
+          if (theArg.equals("true"))
+            arg.action.f(new Boolean(true));
+          else if (theArg.equals("false"))
+            arg.action.f(new Boolean(false));
+          else {
+            throw error("Error: "+arg.name + ": requires a boolean");
+          }
+          break;
+        case Int:
+          int num = 0;
+          try {
+            num = Integer.parseInt(theArg);
+          } catch (java.lang.NumberFormatException e) {
+            throw error("Error: "+arg.name + ": requires an integer");
+          }
+          arg.action.f(num);
+          break;
+        case String:
+          arg.action.f(theArg);
+          break;
+        case StringList:
+          String[] strArray = theArg.split(",");
+          arg.action.f(strArray);
+          break;
+        default:
+          break;
+        }
+        break;
+      }
+      if (!found) {
+        throw error("invalid option: " + cargs[i]);
+      }
+    }
+    return filenames;
+  }
+
+  private void outputSpace(int n)
+  {
+    if (n < 0)
+      new Bug();
+
+    while (n-- != 0)
+      context.out.print(" ");
+    return;
+  }
+
+  public void output()
+  {
+    int max = 0;
+    for (Arg<Object> a : this.args) {
+      int current = a.name.length();
+      if (a.option != null)
+        current += a.option.length();
+      else
+        ;
+      if (current > max)
+        max = current;
+      else
+        ;
+    }
+    context.out.println("Available options:");
+    for (Arg<Object> a : this.args) {
+      int current = a.name.length();
+      context.out.print("   -" + a.name + " ");
+      if (a.option != null) {
+        current += a.option.length();
+        context.out.print(a.option);
+      } else
+        ;
+      outputSpace(max - current + 1);
+      context.out.println(a.desription);
+    }
+    return;
+  }
+
+  public void usage()
+  {
+    context.out
+        .println("The Tiger compiler. Copyright (C) 2013-, SSE of USTC.\n"
+            + "Usage: java Tiger [options] <files or directories>\n");
+    output();
+    return;
+  }
+}
@@ -0,0 +1,86 @@
+package control;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// The state of one compilation: its options, where its output goes,
+// and its counters. It is handed to the lexer, the parser and the
+// later phases instead of being kept in static fields, so that
+// compilations running at the same time in one JVM share nothing but
+// the symbol table (util.Symbol), which is safe to share.
+//
+// A context belongs to one compilation at a time: a batch of files
+// forks a context from the one of the command line for each file.
+public class CompilationContext
+{
+  public final Control.ConLexer lexer;
+  public final Control.ConParser parser;
+  public final Control.ConBatch batch;
+  public final Control.ConServer server;
+  public final Control.ConSlp slp;
+
+  // where the tokens dumped and the reports go
+  public final PrintStream out;
+  // the time spent in each phase, see -verbose-timing; shared with the
+  // contexts forked from this one
+  public final Timing timing;
+  // the directory the relative names of files are relative to: that
+  // of the client, for a request to the compile server
+  private final Path dir;
+
+  private int labels = 0; // the number of the next util.Label
+
+  // a context with the default options, writing to the standard output
+  public CompilationContext()
+  {
+    this(System.out);
+  }
+
+  public CompilationContext(PrintStream out)
+  {
+    this(out, Paths.get(""));
+  }
+
+  public CompilationContext(PrintStream out, Path dir)
+  {
+    this.lexer = new Control.ConLexer();
+    this.parser = new Control.ConParser();
+    this.batch = new Control.ConBatch();
+    this.server = new Control.ConServer();
+    this.slp = new Control.ConSlp();
+    this.out = out;
+    this.timing = new Timing();
+    this.dir = dir;
+  }
+
+  private CompilationContext(CompilationContext from, PrintStream out)
+  {
+    this.lexer = from.lexer.copy();
+    this.parser = from.parser.copy();
+    this.batch = from.batch.copy();
+    this.server = from.server.copy();
+    this.slp = from.slp.copy();
+    this.out = out;
+    this.timing = from.timing;
+    this.dir = from.dir;
+  }
+
+  // a context for another compilation, with a copy of the options of
+  // this one and fresh counters, writing to "out"
+  public CompilationContext fork(PrintStream out)
+  {
+    return new CompilationContext(this, out);
+  }
+
+  // the file named "name" on the command line
+  public Path resolve(String name)
+  {
+    return dir.resolve(name);
+  }
+
+  public int nextLabel()
+  {
+    return labels++;
+  }
+}
@@ -0,0 +1,63 @@
+package control;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// The client of a CompileServer: it sends its command line to the
+// server, prints what the compile printed and exits with its status.
+// It loads none of the compiler, so it starts as fast as a JVM can.
+// It proves itself to the server with the token of the server's token
+// file, so only the user who started the server can use it.
+//
+//   java -cp bin control.CompileClient <port> [options] <files>
+public class CompileClient
+{
+  public static void main(String[] args)
+  {
+    if (args.length < 1) {
+      System.out
+          .println("Usage: java control.CompileClient <port> [options] <files>");
+      System.exit(1);
+    }
+
+    int port = Integer.parseInt(args[0]);
+    String token;
+    try {
+      token = new String(Files.readAllBytes(CompileServer.tokenFile(port)),
+          StandardCharsets.US_ASCII).trim();
+    } catch (IOException e) {
+      System.out.println("no compile server on port " + port
+          + ": cannot read its token: " + e);
+      System.exit(1);
+      return;
+    }
+
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeUTF(token);
+      out.writeUTF(Paths.get("").toAbsolutePath().toString());
+      out.writeInt(args.length - 1);
+      for (int i = 1; i < args.length; i++)
+        out.writeUTF(args[i]);
+      out.flush();
+
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      int status = in.readInt();
+      byte[] buf = new byte[1 << 16];
+      for (int n = in.read(buf); n > 0; n = in.read(buf))
+        System.out.write(buf, 0, n);
+      System.out.flush();
+      System.exit(status);
+    } catch (IOException e) {
+      System.out.println("no compile server on port " + port + ": "
+          + e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,307 @@
+package control;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// A compiler which stays up, so that its classes are loaded and its
+// code made hot by the JIT once, instead of at every compile: it takes
+// command lines from CompileClient on a port of the loopback address,
+// and runs each in a context of its own, several at a time.
+//
+// Any local user can connect to a loopback port, and a command line
+// writes files (-astcache, -slp compile), so a request must carry a
+// token: random bytes the server writes, on start, to a file only its
+// owner can read (see tokenFile()).
+//
+// A request is, as by DataOutputStream: the token and the working
+// directory of the client (writeUTF), the number of arguments
+// (writeInt), then each argument (writeUTF). The reply is the exit
+// status (writeInt), then what the compile printed, up to the end of
+// the connection. Nothing past the token is read before the token is
+// checked. A request must be read within READ_TIMEOUT, and hold at
+// most MAX_ARGS arguments of MAX_BYTES characters in all, or its
+// connection is closed without a reply: a client, even one without
+// the token, cannot hold a thread of the server or fill its memory.
+//
+// After each request, the server prints how long it took from the
+// connection to the reply, and the latencies of all the requests so
+// far.
+public class CompileServer
+{
+  // runs the command line "args" in "context", and returns the exit
+  // status
+  public interface Handler
+  {
+    public int run(CompilationContext context, String[] args);
+  }
+
+  private static final int READ_TIMEOUT = 10_000; // ms
+  private static final int MAX_ARGS = 4096;
+  private static final int MAX_BYTES = 1 << 20;
+
+  private final int port;
+  private final Handler handler;
+  private String token;
+
+  // The latencies of the requests served, in nanoseconds, counted in
+  // buckets: bucket t < 16 counts the latencies t, and bucket
+  // ((e - 3) << 4) + m, those whose highest bit is bit e and the next
+  // four bits m. So a latency is known within 1/16, in a table of a
+  // fixed size however many requests are served.
+  private final long[] histogram = new long[61 << 4];
+  private long count = 0;
+  private long sum = 0;
+  private long max = 0;
+
+  public CompileServer(int port, Handler handler)
+  {
+    this.port = port;
+    this.handler = handler;
+  }
+
+  // the file of the token of the server on "port": in the directory
+  // .tiger of the home directory of the user
+  public static Path tokenFile(int port)
+  {
+    return Paths.get(System.getProperty("user.home"), ".tiger", "server-"
+        + port + ".token");
+  }
+
+  // Serve requests until the process is killed.
+  public void serve() throws IOException
+  {
+    ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime()
+        .availableProcessors());
+    try (ServerSocket server = new ServerSocket(port, 50,
+        InetAddress.getLoopbackAddress())) {
+      Path file = writeToken(server.getLocalPort());
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          // left behind, and written over by the next server
+        }
+      }));
+      System.out.println("compile server on port " + server.getLocalPort());
+      while (true) {
+        Socket socket = server.accept();
+        long start = System.nanoTime();
+        pool.submit(() -> {
+          try (Socket s = socket) {
+            request(s);
+          } catch (IOException e) {
+            // the client went away, or sent no request in time: there
+            // is no one to reply to
+          } finally {
+            System.out.println(record(System.nanoTime() - start));
+          }
+        });
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // Make a token and write it to the token file of "port", readable by
+  // its owner only: the file is made so in a directory of the owner
+  // only, then moved in place. Return the file.
+  private Path writeToken(int port) throws IOException
+  {
+    byte[] random = new byte[32];
+    new SecureRandom().nextBytes(random);
+    StringBuilder hex = new StringBuilder();
+    for (byte b : random) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+      hex.append(Character.forDigit(b & 0xf, 16));
+    }
+    token = hex.toString();
+
+    Path file = tokenFile(port);
+    Path dir = file.getParent();
+    boolean posix = FileSystems.getDefault().supportedFileAttributeViews()
+        .contains("posix");
+    Files.createDirectories(dir);
+    Path tmp;
+    if (posix) {
+      Files.setPosixFilePermissions(dir, PosixFilePermissions
+          .fromString("rwx------"));
+      tmp = Files.createTempFile(dir, "server", ".tmp", PosixFilePermissions
+          .asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } else
+      tmp = Files.createTempFile(dir, "server", ".tmp");
+    Files.write(tmp, token.getBytes(StandardCharsets.US_ASCII));
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    return file;
+  }
+
+  // The input of "socket", which times out once READ_TIMEOUT has
+  // passed since it was opened, however slowly the bytes come: the
+  // timeout of the socket is set to what is left before each read.
+  private static final class Deadline extends FilterInputStream
+  {
+    private final Socket socket;
+    private final long deadline = System.nanoTime() + READ_TIMEOUT
+        * 1_000_000L;
+
+    Deadline(Socket socket) throws IOException
+    {
+      super(socket.getInputStream());
+      this.socket = socket;
+    }
+
+    private void arm() throws IOException
+    {
+      long left = (deadline - System.nanoTime()) / 1_000_000;
+      if (left <= 0)
+        throw new SocketTimeoutException("request not read in time");
+      socket.setSoTimeout((int) left);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      arm();
+      return in.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      arm();
+      return in.read(b, off, len);
+    }
+  }
+
+  private void request(Socket socket) throws IOException
+  {
+    DataInputStream in = new DataInputStream(new Deadline(socket));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(output, false, "UTF-8");
+    int status;
+    String given = in.readUTF();
+    boolean wrong = !MessageDigest.isEqual(given
+        .getBytes(StandardCharsets.UTF_8), token
+        .getBytes(StandardCharsets.UTF_8));
+    if (wrong) {
+      out.println("compile server: wrong token");
+      status = 1;
+    } else {
+      String dir = in.readUTF();
+      String[] args = arguments(in);
+      try {
+        status = handler.run(new CompilationContext(out, Paths.get(dir)),
+            args);
+      } catch (Throwable e) {
+        // a bug, or a StackOverflowError on a deeply nested program:
+        // this compile fails, not the server
+        e.printStackTrace(out);
+        status = 1;
+      }
+    }
+    out.flush();
+
+    DataOutputStream reply = new DataOutputStream(socket.getOutputStream());
+    reply.writeInt(status);
+    output.writeTo(reply);
+    reply.flush();
+    if (wrong) {
+      // The client writes all of its request before it reads the
+      // reply: the rest is skipped, not read, so that the connection
+      // is not reset under the reply.
+      socket.shutdownOutput();
+      byte[] skipped = new byte[4096];
+      for (long n = 0; n <= MAX_BYTES; ) {
+        int k = in.read(skipped);
+        if (k < 0)
+          break;
+        n += k;
+      }
+    }
+  }
+
+  // the arguments of a request, within MAX_ARGS and MAX_BYTES
+  private static String[] arguments(DataInputStream in) throws IOException
+  {
+    int n = in.readInt();
+    if (n < 0 || n > MAX_ARGS)
+      throw new IOException("not a request: " + n + " arguments");
+    String[] args = new String[n];
+    long bytes = 0;
+    for (int i = 0; i < n; i++) {
+      args[i] = in.readUTF();
+      bytes += args[i].length();
+      if (bytes > MAX_BYTES)
+        throw new IOException("not a request: arguments too long");
+    }
+    return args;
+  }
+
+  private static int bucket(long nanos)
+  {
+    if (nanos < 16)
+      return (int) Math.max(nanos, 0);
+    int e = 63 - Long.numberOfLeadingZeros(nanos);
+    return ((e - 3) << 4) + (int) ((nanos >>> (e - 4)) & 15);
+  }
+
+  // the least latency of bucket "b"
+  private static long least(int b)
+  {
+    if (b < 16)
+      return b;
+    int e = (b >> 4) + 3;
+    return (16L + (b & 15)) << (e - 4);
+  }
+
+  // the latency below which the fraction "q" of the requests are,
+  // within 1/16
+  private long percentile(double q)
+  {
+    long rank = (long) Math.ceil(q * count);
+    long seen = 0;
+    for (int b = 0; b < histogram.length; b++) {
+      seen += histogram[b];
+      if (seen >= rank)
+        return least(b);
+    }
+    return max;
+  }
+
+  // record the latency of a request, and return the line reporting it
+  private synchronized String record(long nanos)
+  {
+    histogram[bucket(nanos)]++;
+    count++;
+    sum += nanos;
+    max = Math.max(max, nanos);
+    return String.format(
+        "request %d: %.2f ms (mean %.2f, p50 %.2f, p99 %.2f, max %.2f ms)",
+        count, ms(nanos), ms(sum / count), ms(percentile(0.5)),
+        ms(percentile(0.99)), ms(max));
+  }
+
+  private static double ms(long nanos)
+  {
+    return nanos / 1e6;
+  }
+}
@@ -1,21 +1,102 @@
-package control;
-
-public class Control
-{
-  // the lexer
-  public static class ConLexer
-  {
-    public static boolean test = false;
-    public static boolean dump = false;
-  }
-  
-  // the straight-line program interpreter
-  public static class ConSlp
-  {
-    public enum T{NONE, ARGS, INTERP, COMPILE, TEST, DIV};
-    
-    public static T action = T.NONE;
-    public static boolean div = false;
-    public static boolean keepasm = false;
-  }
-}
+package control;
+
+// The options of the compiler, in groups. They are not global: each
+// compilation has its own, in its CompilationContext.
+public class Control
+{
+  // the lexer
+  public static class ConLexer
+  {
+    public boolean test = false;
+    public boolean dump = false;
+    public int threads = 1; // > 1 to lex on that many threads
+
+    // how tokens are dumped, see lexer.TokenWriter
+    public enum Format{TEXT, TSV, BIN};
+
+    public Format format = Format.TEXT;
+
+    ConLexer copy()
+    {
+      ConLexer c = new ConLexer();
+      c.test = test;
+      c.dump = dump;
+      c.threads = threads;
+      c.format = format;
+      return c;
+    }
+  }
+  
+  // the parser
+  public static class ConParser
+  {
+    // parse statements and expressions with a stack on the heap,
+    // instead of recursive calls, for deeply nested programs
+    public boolean deep = false;
+    // skip the bodies of methods, to be parsed only when asked for
+    // (see parser.Parser.parseBody)
+    public boolean lazy = false;
+    public int threads = 1; // > 1 to parse classes on that many threads
+    // the directory of the trees cached, see ast.AstCache, or null
+    public String cache = null;
+
+    ConParser copy()
+    {
+      ConParser c = new ConParser();
+      c.deep = deep;
+      c.lazy = lazy;
+      c.threads = threads;
+      c.cache = cache;
+      return c;
+    }
+  }
+
+  // the compilation of several files
+  public static class ConBatch
+  {
+    // the number of files compiled at a time: 0 for a virtual thread
+    // per file, or else a thread per processor
+    public int jobs = 0;
+
+    ConBatch copy()
+    {
+      ConBatch c = new ConBatch();
+      c.jobs = jobs;
+      return c;
+    }
+  }
+
+  // the compile server, see CompileServer
+  public static class ConServer
+  {
+    // the loopback port to take compile requests on, or -1 to compile
+    // the files named on the command line
+    public int port = -1;
+
+    ConServer copy()
+    {
+      ConServer c = new ConServer();
+      c.port = port;
+      return c;
+    }
+  }
+
+  // the straight-line program interpreter
+  public static class ConSlp
+  {
+    public enum T{NONE, ARGS, INTERP, COMPILE, TEST, DIV};
+    
+    public T action = T.NONE;
+    public boolean div = false;
+    public boolean keepasm = false;
+
+    ConSlp copy()
+    {
+      ConSlp c = new ConSlp();
+      c.action = action;
+      c.div = div;
+      c.keepasm = keepasm;
+      return c;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package control;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import ast.Ast;
+import ast.AstCache;
+import lexer.LexError;
+import parser.Parser;
+
+// The compiler as a library, for a build tool to compile many sources
+// in one warmed-up JVM instead of starting a JVM per file. Nothing here
+// ends the process or prints, except what the options of the context
+// ask to be dumped, which goes to the output of the context. Errors
+// in the source come back in the Result.
+//
+// A context is for one compilation at a time; compilations running at
+// the same time each need their own (see CompilationContext.fork()).
+public final class TigerCompiler
+{
+  // the outcome of a compilation
+  public static final class Result
+  {
+    private final Ast ast;
+    private final List<String> diagnostics;
+    private final int lexical;
+    private final int syntax;
+
+    Result(Ast ast, List<String> diagnostics, int lexical, int syntax)
+    {
+      this.ast = ast;
+      this.diagnostics = Collections.unmodifiableList(diagnostics);
+      this.lexical = lexical;
+      this.syntax = syntax;
+    }
+
+    // whether the source compiled without errors
+    public boolean ok()
+    {
+      return diagnostics.isEmpty();
+    }
+
+    // the tree of the source: with syntax errors, that of what could be
+    // parsed of it; null if it could not be lexed
+    public Ast ast()
+    {
+      return ast;
+    }
+
+    // the errors, in the order of the source, as
+    // "fname:line:column: message"
+    public List<String> diagnostics()
+    {
+      return diagnostics;
+    }
+
+    // how many of the diagnostics are lexical errors (the lexer stops
+    // at the first), and how many syntax errors; a file which cannot be
+    // read is neither
+    public int lexicalErrors()
+    {
+      return lexical;
+    }
+
+    public int syntaxErrors()
+    {
+      return syntax;
+    }
+  }
+
+  private TigerCompiler()
+  {
+  }
+
+  // map the whole file into memory: the lexer scans the mapped
+  // bytes in place, so the heap use does not grow with the file.
+  public static ByteBuffer map(Path file) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(file,
+        StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  // Compile the bytes of "source", from its position to its limit,
+  // with the options of "context". "fname" names the source in the
+  // diagnostics.
+  @SuppressWarnings("try")
+  public static Result compile(CompilationContext context, String fname,
+      ByteBuffer source)
+  {
+    // a tree cached for the same source skips the lexer and the
+    // parser. A lazy parse leaves trees incomplete, it is not cached;
+    // the tokens dumped by -lex need the lexer to run.
+    AstCache cache = null;
+    byte[] key = null;
+    if (context.parser.cache != null && !context.parser.lazy
+        && !context.lexer.dump) {
+      cache = new AstCache(context.resolve(context.parser.cache)
+          .toString());
+      Ast ast;
+      try (Timing.Scope scope = context.timing.scope(Timing.Phase.CACHE)) {
+        key = cache.key(source);
+        ast = cache.load(key);
+      }
+      if (ast != null)
+        return new Result(ast, Collections.<String> emptyList(), 0, 0);
+    }
+
+    Parser parser;
+    try {
+      parser = new Parser(context, fname, source);
+    } catch (LexError e) {
+      return new Result(null, Collections.singletonList(e.getMessage()), 1,
+          0);
+    }
+    Ast ast = parser.parse();
+    if (cache != null && parser.errors().isEmpty()) {
+      try (Timing.Scope scope = context.timing.scope(Timing.Phase.CACHE)) {
+        cache.store(key, ast);
+      }
+    }
+    return new Result(ast, parser.errors(), 0, parser.errors().size());
+  }
+
+  // Compile a source held in a string, one byte a character (the
+  // lexer reads Latin-1).
+  public static Result compile(CompilationContext context, String fname,
+      String source)
+  {
+    return compile(context, fname,
+        ByteBuffer.wrap(source.getBytes(StandardCharsets.ISO_8859_1)));
+  }
+
+  // Compile the file "fname" (see CompilationContext.resolve()). A
+  // file which cannot be read is reported as a diagnostic.
+  public static Result compileFile(CompilationContext context, String fname)
+  {
+    ByteBuffer source;
+    try {
+      source = map(context.resolve(fname));
+    } catch (IOException e) {
+      return new Result(null, Collections.singletonList(fname
+          + ": cannot be read: " + e), 0, 0);
+    }
+    return compile(context, fname, source);
+  }
+}
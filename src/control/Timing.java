@@ -0,0 +1,147 @@
+package control;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// The time spent in each phase of a compilation, for -verbose-timing:
+// the wall time, the CPU time and the bytes allocated, the last two
+// from the ThreadMXBean of the JVM. A phase is timed in a scope:
+//
+//   try (Timing.Scope scope = context.timing.scope(Timing.Phase.LEX)) {
+//     ...
+//   }
+//
+// Until enabled, every scope is the same object, which does nothing:
+// nothing is measured or allocated.
+//
+// The CPU time and the bytes are those of the thread which enters the
+// scope: the threads of -lexthreads and -parsethreads are not counted.
+// Where the JVM does not measure them (for a virtual thread, say),
+// they are printed as "n/a".
+// The contexts forked for the files of a batch share the timing of
+// the command line, so the table sums up all the files.
+public class Timing
+{
+  public enum Phase
+  {
+    LEX("lex"), PARSE("parse"), CACHE("ast cache"), SLP_ARGS("slp args"),
+    SLP_INTERP("slp interp"), SLP_COMPILE("slp compile"), GCC("gcc");
+
+    private final String name;
+
+    private Phase(String name)
+    {
+      this.name = name;
+    }
+  }
+
+  public interface Scope extends AutoCloseable
+  {
+    @Override
+    public void close();
+  }
+
+  private static final Scope NONE = () -> {
+  };
+
+  private boolean on = false;
+
+  // totals by Phase.ordinal()
+  private final int[] count = new int[Phase.values().length];
+  private final long[] wall = new long[Phase.values().length];
+  private final long[] cpu = new long[Phase.values().length];
+  private final long[] bytes = new long[Phase.values().length];
+  // the phases entered at least once where the CPU time, or the bytes,
+  // could not be measured
+  private final boolean[] noCpu = new boolean[Phase.values().length];
+  private final boolean[] noBytes = new boolean[Phase.values().length];
+
+  public void enable()
+  {
+    on = true;
+  }
+
+  public boolean enabled()
+  {
+    return on;
+  }
+
+  public Scope scope(Phase phase)
+  {
+    if (!on)
+      return NONE;
+    return new Running(phase);
+  }
+
+  private final class Running implements Scope
+  {
+    private final Phase phase;
+    private final long wall0 = System.nanoTime();
+    private final long cpu0 = cpuTime();
+    private final long bytes0 = allocatedBytes();
+
+    Running(Phase phase)
+    {
+      this.phase = phase;
+    }
+
+    @Override
+    public void close()
+    {
+      long w = System.nanoTime() - wall0;
+      long c = cpuTime();
+      long b = allocatedBytes();
+      synchronized (Timing.this) {
+        int p = phase.ordinal();
+        count[p]++;
+        wall[p] += w;
+        if (c < 0 || cpu0 < 0)
+          noCpu[p] = true;
+        else
+          cpu[p] += c - cpu0;
+        if (b < 0 || bytes0 < 0)
+          noBytes[p] = true;
+        else
+          bytes[p] += b - bytes0;
+      }
+    }
+  }
+
+  // the CPU time of the current thread, or -1 where the JVM does not
+  // measure it
+  private static long cpuTime()
+  {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!threads.isCurrentThreadCpuTimeSupported())
+      return -1;
+    return threads.getCurrentThreadCpuTime();
+  }
+
+  // the bytes allocated by the current thread, or -1 where the JVM does
+  // not count them (it is an extension of HotSpot)
+  private static long allocatedBytes()
+  {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    return ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // print the phases entered, with their totals
+  public synchronized void print(PrintStream out)
+  {
+    out.println(String.format("%-12s %6s %10s %10s %12s", "phase", "count",
+        "wall ms", "cpu ms", "alloc KB"));
+    for (Phase phase : Phase.values()) {
+      int p = phase.ordinal();
+      if (count[p] == 0)
+        continue;
+      out.println(String.format("%-12s %6d %10.2f %10s %12s", phase.name,
+          count[p], wall[p] / 1e6, noCpu[p] ? "n/a" : String.format("%.2f",
+              cpu[p] / 1e6), noBytes[p] ? "n/a" : Long.toString(bytes[p]
+              / 1024)));
+    }
+  }
+}
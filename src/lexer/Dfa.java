@@ -0,0 +1,169 @@
+package lexer;
+
+import lexer.Token.Kind;
+import util.Bug;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The deterministic automaton recognizing the tokens, built once from
+// the token specification below. Bytes are first mapped to classes of
+// bytes that no transition tells apart, so that the transition table
+// takes "states * classes" entries instead of "states * 256". A state
+// is the offset of its row in that table, so a step is two loads and
+// an add.
+//
+// The lexer runs it by maximal munch: it moves from START while the
+// next byte has a transition, then the state it stops in tells the
+// kind of the token, if any. Identifiers and keywords, the most
+// frequent tokens, leave the automaton once in ID: the rest of their
+// bytes are only looked up in inId(). So do the tokens which end
+// whatever the next byte, see last().
+final class Dfa {
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz"
+            + "ABCDEFGHIJKLMNOPQRSTUVWXYZ_";
+    private static final String DIGITS = "0123456789";
+
+    // The token specification: the spelling of each kind of token that
+    // has a fixed one, and the classes of the first and of the
+    // following bytes of the others. Keywords are spelled like
+    // identifiers; they are told apart by Lexer.keyword() once an
+    // identifier has been scanned, which keeps the table small.
+    private static final Object[][] SPEC = {
+            {Kind.TOKEN_ADD, "+"},
+            {Kind.TOKEN_AND, "&&"},
+            {Kind.TOKEN_ASSIGN, "="},
+            {Kind.TOKEN_COMMER, ","},
+            {Kind.TOKEN_DOT, "."},
+            {Kind.TOKEN_ID, LETTERS, LETTERS + DIGITS},
+            {Kind.TOKEN_LBRACE, "{"},
+            {Kind.TOKEN_LBRACK, "["},
+            {Kind.TOKEN_LPAREN, "("},
+            {Kind.TOKEN_LT, "<"},
+            {Kind.TOKEN_NOT, "!"},
+            {Kind.TOKEN_NUM, DIGITS, DIGITS},
+            {Kind.TOKEN_RBRACE, "}"},
+            {Kind.TOKEN_RBRACK, "]"},
+            {Kind.TOKEN_RPAREN, ")"},
+            {Kind.TOKEN_SEMI, ";"},
+            {Kind.TOKEN_SUB, "-"},
+            {Kind.TOKEN_TIMES, "*"},
+    };
+
+    static final int DEAD = 0; // no token goes on this way
+    static final int START;
+    static final int ID; // the state looping on the bytes of an identifier
+
+    private static final int[] classOf = new int[256]; // class of each byte
+    private static final int classes;
+    private static final int[] move; // move[state + class]
+    private static final Kind[] accept; // accept[state]: kind of token ending there, or null
+    private static final boolean[] inId = new boolean[256]; // whether a byte goes on from ID
+    private static final boolean[] last; // last[state]: whether it accepts, and no transition leaves it
+
+    private Dfa() {
+    }
+
+    static {
+        // first, the transitions on each of the 256 bytes
+        List<int[]> raw = new ArrayList<>();
+        List<Kind> kinds = new ArrayList<>();
+        raw.add(new int[256]); // DEAD
+        kinds.add(null);
+        raw.add(new int[256]); // START
+        kinds.add(null);
+        int start = 1; // row index of START, until the rows are laid out
+        int id = DEAD; // row index of ID, likewise
+
+        for (Object[] spec : SPEC) {
+            Kind kind = (Kind) spec[0];
+            int s = start;
+            if (spec.length == 2) {
+                for (char b : ((String) spec[1]).toCharArray()) {
+                    if (raw.get(s)[b] == DEAD) {
+                        raw.get(s)[b] = raw.size();
+                        raw.add(new int[256]);
+                        kinds.add(null);
+                    }
+                    s = raw.get(s)[b];
+                }
+            } else {
+                int loop = raw.size();
+                raw.add(new int[256]);
+                kinds.add(null);
+                for (char b : ((String) spec[1]).toCharArray()) {
+                    if (raw.get(start)[b] != DEAD)
+                        new Bug();
+                    raw.get(start)[b] = loop;
+                }
+                for (char b : ((String) spec[2]).toCharArray())
+                    raw.get(loop)[b] = loop;
+                s = loop;
+            }
+            if (kinds.get(s) != null)
+                new Bug();
+            kinds.set(s, kind);
+            if (kind == Kind.TOKEN_ID)
+                id = s;
+        }
+
+        // then, bytes with the same transitions in all states share a class
+        Map<List<Integer>, Integer> columns = new HashMap<>();
+        for (int b = 0; b < 256; b++) {
+            List<Integer> column = new ArrayList<>();
+            for (int[] t : raw)
+                column.add(t[b]);
+            Integer c = columns.get(column);
+            if (c == null) {
+                c = columns.size();
+                columns.put(column, c);
+            }
+            classOf[b] = c;
+        }
+        classes = columns.size();
+
+        move = new int[raw.size() * classes];
+        for (int s = 0; s < raw.size(); s++) {
+            for (int b = 0; b < 256; b++)
+                move[s * classes + classOf[b]] = raw.get(s)[b] * classes;
+        }
+        last = new boolean[raw.size() * classes];
+        for (int s = 0; s < raw.size(); s++) {
+            last[s * classes] = kinds.get(s) != null;
+            for (int b = 0; b < 256; b++)
+                last[s * classes] &= raw.get(s)[b] == DEAD;
+        }
+        accept = new Kind[raw.size() * classes];
+        for (int s = 0; s < raw.size(); s++)
+            accept[s * classes] = kinds.get(s);
+        START = start * classes;
+        ID = id * classes;
+        for (int b = 0; b < 256; b++)
+            inId[b] = raw.get(id)[b] == id;
+    }
+
+    // the state reached from "state" on the byte "b", possibly DEAD
+    static int step(int state, int b) {
+        return move[state + classOf[b]];
+    }
+
+    // whether the byte "b" goes on an identifier, from ID back to ID:
+    // the same as step(ID, b) == ID, in one load
+    static boolean inId(int b) {
+        return inId[b];
+    }
+
+    // whether a token ends in "state" whatever the next byte, as after
+    // most operators and separators: it accepts, and no transition
+    // leaves it
+    static boolean last(int state) {
+        return last[state];
+    }
+
+    // the kind of token scanned when stopping in "state", or null
+    static Kind accept(int state) {
+        return accept[state];
+    }
+}
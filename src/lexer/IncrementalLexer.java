@@ -0,0 +1,89 @@
+package lexer;
+
+import lexer.Token.Kind;
+
+import java.nio.ByteBuffer;
+
+// Keep the tokens of a source buffer up to date as it is edited, by
+// lexing again only around each edit.
+//
+// Lexing is restarted just after the last token ending before the
+// edit: that token was stopped by a byte the edit leaves alone, and a
+// token always ends outside of any comment, so the lexer may start
+// there as at the start of a file. It goes on until a token starts
+// where an old token, after the edit, starts too: from a token start,
+// the same bytes are lexed the same way, so the old tokens from there
+// on are reused, moved by the size change of the edit.
+//
+// The tokens keep a gap where the last edit was (see TokenBuffer):
+// the tokens after it count their offsets from the end of the source,
+// so an edit costs the tokens lexed again and the tokens between it
+// and the last edit, not all the tokens after it. tokens() closes the
+// gap, which costs the tokens after it: a run of edits read once pays
+// that once.
+public class IncrementalLexer {
+    private final String fname;
+    private TokenBuffer tokens;
+    private int relexed = 0; // the number of tokens lexed by the last edit
+
+    public IncrementalLexer(String fname, ByteBuffer source) {
+        this.fname = fname;
+        this.tokens = new Lexer(fname, source, false).scanAll();
+    }
+
+    // the tokens of the source, as of the last edit: the same buffer
+    // after each edit, to be read only until the next one
+    public TokenBuffer tokens() {
+        tokens.closeGap();
+        return tokens;
+    }
+
+    public int relexed() {
+        return relexed;
+    }
+
+    // Update the tokens after an edit: "source" is the source of the
+    // current tokens, with the "removed" bytes at offset "from"
+    // replaced by the "inserted" bytes now at that offset. The tokens
+    // then slice "source".
+    //
+    // An edit after which the source does not lex throws the LexError,
+    // and leaves the tokens as they were, those of the source before
+    // the edit: the new tokens are lexed apart, and put in only once
+    // they are all lexed. To go on, undo the edit, or lex the source
+    // again with a new IncrementalLexer.
+    public void edit(ByteBuffer source, int from, int removed, int inserted) {
+        // the tokens before "keep" are left alone, lexing restarts at
+        // the end of the last of them
+        int keep = tokens.endingBefore(from);
+        tokens.moveGap(keep);
+        int restart = (keep == 0) ? source.position() : tokens.end(keep - 1);
+
+        LineMap lines = new LineMap(source);
+        TokenBuffer fresh = new TokenBuffer(source, lines, 16);
+        ByteBuffer rest = source.duplicate();
+        rest.position(restart);
+        Lexer lexer = new Lexer(fname, rest, lines);
+        int after = tokens.sizeAfterGap();
+        int next = 0; // the first old token after the gap which may start after the edit
+        for (;;) {
+            Kind kind = lexer.scanInto(fresh);
+            int offset = fresh.offset(fresh.size() - 1);
+            if (offset >= from + inserted) {
+                while (next < after && tokens.offsetAfterGap(next) + source.limit() < offset)
+                    next++;
+                if (next < after && tokens.offsetAfterGap(next) + source.limit() == offset) {
+                    // in step again: this is old token "next", moved
+                    next++;
+                    break;
+                }
+            }
+            if (kind == Kind.TOKEN_EOF) {
+                next = after;
+                break;
+            }
+        }
+        relexed = fresh.size();
+        tokens.replaceAtGap(next, fresh);
+    }
+}
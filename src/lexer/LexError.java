@@ -0,0 +1,12 @@
+package lexer;
+
+// A byte of the source which no token starts with. The message is
+// "fname:line:column: illegal character 'c'", like the syntax errors
+// of the parser. The lexer stops at the first one.
+public class LexError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public LexError(String message) {
+        super(message);
+    }
+}
@@ -1,236 +1,453 @@
-package lexer;
-
-import lexer.Token.Kind;
-import util.Todo;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
-
-import static control.Control.ConLexer.dump;
-
-public class Lexer {
-    private static final Map<String, Kind> keywords = new HashMap<>();
-
-    static {
-        keywords.put("boolean", Kind.TOKEN_BOOLEAN);
-        keywords.put("class", Kind.TOKEN_CLASS);
-        keywords.put("else", Kind.TOKEN_ELSE);
-        keywords.put("extends", Kind.TOKEN_EXTENDS);
-        keywords.put("false", Kind.TOKEN_FALSE);
-        keywords.put("if", Kind.TOKEN_IF);
-        keywords.put("int", Kind.TOKEN_INT);
-        keywords.put("length", Kind.TOKEN_LENGTH);
-        keywords.put("main", Kind.TOKEN_MAIN);
-        keywords.put("new", Kind.TOKEN_NEW);
-        keywords.put("out", Kind.TOKEN_OUT);
-        keywords.put("println", Kind.TOKEN_PRINTLN);
-        keywords.put("public", Kind.TOKEN_PUBLIC);
-        keywords.put("return", Kind.TOKEN_RETURN);
-        keywords.put("static", Kind.TOKEN_STATIC);
-        keywords.put("String", Kind.TOKEN_STRING);
-        keywords.put("System", Kind.TOKEN_SYSTEM);
-        keywords.put("this", Kind.TOKEN_THIS);
-        keywords.put("true", Kind.TOKEN_TRUE);
-        keywords.put("void",  Kind.TOKEN_VOID);
-        keywords.put("while", Kind.TOKEN_WHILE);
-    }
-
-
-
-    private String fname; // the input file name to be compiled
-    private InputStream fstream; // input stream for the above file
-    private Integer linePos = 1;
-    private Integer columnPos = 1;
-
-
-    public Lexer(String fname, InputStream fstream) {
-        this.fname = fname;
-        this.fstream = fstream;
-    }
-
-    // When called, return the next token (refer to the code "Token.java")
-    // from the input stream.
-    // Return TOKEN_EOF when reaching the end of the input stream.
-    private Token nextTokenInternal() throws Exception {
-        int c = this.fstream.read();
-        if (-1 == c)
-            // The value for "lineNum" is now "null",
-            // you should modify this to an appropriate
-            // line number for the "EOF" token.
-            return new Token(Kind.TOKEN_EOF, linePos, columnPos);
-
-        // skip all kinds of "blanks"
-        c = skipBlanks(c);
-        if (-1 == c)
-            return new Token(Kind.TOKEN_EOF, linePos, columnPos);
-
-        if (isAlpha(c)) {
-            StringBuilder sb = new StringBuilder();
-            do {
-                sb.append((char) c);
-                columnPos++;
-                this.fstream.mark(1);
-                c = this.fstream.read();
-            } while (isAlpha(c) || isDigit(c));
-
-            this.fstream.reset();
-
-
-            String lexeme = sb.toString();
-
-            if (keywords.containsKey(lexeme)) {
-                return new Token(keywords.get(lexeme), linePos, columnPos);
-            } else {
-                return new Token(Kind.TOKEN_ID, linePos, columnPos, lexeme);
-            }
-        }
-
-        if (isDigit(c)) {
-            StringBuilder sb = new StringBuilder();
-            do {
-                sb.append((char) c);
-                columnPos++;
-                this.fstream.mark(1);
-                c = this.fstream.read();
-            } while (isDigit(c));
-
-            this.fstream.reset();
-
-            return new Token(Kind.TOKEN_NUM, linePos, columnPos, sb.toString());
-        }
-
-        switch (c) {
-            case '+':
-                return new Token(Kind.TOKEN_ADD, linePos, ++columnPos);
-            case '-':
-                return new Token(Kind.TOKEN_SUB, linePos, ++columnPos);
-            case '*':
-                return new Token(Kind.TOKEN_TIMES, linePos, ++columnPos);
-            case '=':
-                return new Token(Kind.TOKEN_ASSIGN, linePos, ++columnPos);
-            case ',':
-                return new Token(Kind.TOKEN_COMMER, linePos, ++columnPos);
-            case '.':
-                return new Token(Kind.TOKEN_DOT, linePos, ++columnPos);
-            case '{':
-                return new Token(Kind.TOKEN_LBRACE, linePos, ++columnPos);
-            case '[':
-                return new Token(Kind.TOKEN_LBRACK, linePos, ++columnPos);
-            case '(':
-                return new Token(Kind.TOKEN_LPAREN, linePos, ++columnPos);
-            case '<':
-                return new Token(Kind.TOKEN_LT, linePos, ++columnPos);
-            case '!':
-                return new Token(Kind.TOKEN_NOT, linePos, ++columnPos);
-            case '}':
-                return new Token(Kind.TOKEN_RBRACE, linePos, ++columnPos);
-            case ']':
-                return new Token(Kind.TOKEN_RBRACK, linePos, ++columnPos);
-            case ')':
-                return new Token(Kind.TOKEN_RPAREN, linePos, ++columnPos);
-            case ';':
-                return new Token(Kind.TOKEN_SEMI, linePos, ++columnPos);
-            case '&':
-                if (this.fstream.read() == '&') {
-                    return new Token(Kind.TOKEN_AND, linePos, columnPos+=2);
-                }
-            case '/':
-                int cc = this.fstream.read();
-                if ('/' == cc) {
-
-                    StringBuilder comments = new StringBuilder();
-
-                    do {
-                        cc = this.fstream.read();
-                        comments.append((char)cc);
-                    } while (cc != '\n' && cc != -1);
-
-                    if (cc == '\n') {
-                        linePos++;
-                        columnPos = 1;
-                    }
-
-                    //System.out.println(comments);
-
-                    return nextTokenInternal();
-                } else if ('*' == cc) {
-
-                    StringBuilder comments = new StringBuilder();
-
-                    int pre;
-                    do {
-                        pre = cc;
-                        cc = this.fstream.read();
-                        if (cc == '\n') {
-                            linePos++;
-                            columnPos = 1;
-                        }
-                        if (pre == '*' && cc == '/') {
-                            comments.delete(comments.length() - 1, comments.length());
-                            break;
-                        }
-                        comments.append((char)cc);
-                    } while (true);
-
-                    //System.out.println(comments);
-                    return nextTokenInternal();
-                }
-            default:
-
-                // Lab 1, exercise 2: supply missing code to
-                // lex other kinds of tokens.
-                // Hint: think carefully about the basic
-                // data structure and algorithms. The code
-                // is not that much and may be less than 50 lines. If you
-                // find you are writing a lot of code, you
-                // are on the wrong way.
-                new Todo();
-                return null;
-        }
-    }
-
-    private boolean isDigit(int c) {
-        return c >= '0' && c <= '9';
-    }
-
-    private boolean isAlpha(int c) {
-        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
-    }
-
-    private int skipBlanks(int c) throws IOException {
-        while (true) {
-            if (' ' == c) {
-                columnPos++;
-            } else if ('\r' == c) {
-                columnPos = 1;
-            } else if ('\n' == c) {
-                linePos++;
-                columnPos = 1;
-            } else if ('\t' == c) {
-                columnPos+=4;
-            } else {
-                break;
-            }
-
-            c = this.fstream.read();
-
-        }
-        return c;
-    }
-
-    public Token nextToken() {
-        Token t = null;
-
-        try {
-            t = this.nextTokenInternal();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-        if (dump)
-            System.out.println(t);
-        return t;
-    }
-}
+package lexer;
+
+import control.CompilationContext;
+import control.Timing;
+import lexer.Token.Kind;
+import util.Symbol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+public class Lexer {
+    // The keyword spelled by the bytes [start, end) of "b", or null
+    // for an identifier. This switches on the length and the first
+    // byte, then compares the remaining bytes in place, so that no
+    // String is built to recognize a keyword.
+    static Kind keyword(ByteBuffer b, int start, int end) {
+        switch (end - start) {
+            case 2:
+                return is(b, start, "if") ? Kind.TOKEN_IF : null;
+            case 3:
+                switch (b.get(start)) {
+                    case 'i':
+                        return is(b, start, "int") ? Kind.TOKEN_INT : null;
+                    case 'n':
+                        return is(b, start, "new") ? Kind.TOKEN_NEW : null;
+                    case 'o':
+                        return is(b, start, "out") ? Kind.TOKEN_OUT : null;
+                    default:
+                        return null;
+                }
+            case 4:
+                switch (b.get(start)) {
+                    case 'e':
+                        return is(b, start, "else") ? Kind.TOKEN_ELSE : null;
+                    case 'm':
+                        return is(b, start, "main") ? Kind.TOKEN_MAIN : null;
+                    case 't':
+                        if (is(b, start, "this"))
+                            return Kind.TOKEN_THIS;
+                        return is(b, start, "true") ? Kind.TOKEN_TRUE : null;
+                    case 'v':
+                        return is(b, start, "void") ? Kind.TOKEN_VOID : null;
+                    default:
+                        return null;
+                }
+            case 5:
+                switch (b.get(start)) {
+                    case 'c':
+                        return is(b, start, "class") ? Kind.TOKEN_CLASS : null;
+                    case 'f':
+                        return is(b, start, "false") ? Kind.TOKEN_FALSE : null;
+                    case 'w':
+                        return is(b, start, "while") ? Kind.TOKEN_WHILE : null;
+                    default:
+                        return null;
+                }
+            case 6:
+                switch (b.get(start)) {
+                    case 'l':
+                        return is(b, start, "length") ? Kind.TOKEN_LENGTH : null;
+                    case 'p':
+                        return is(b, start, "public") ? Kind.TOKEN_PUBLIC : null;
+                    case 'r':
+                        return is(b, start, "return") ? Kind.TOKEN_RETURN : null;
+                    case 's':
+                        return is(b, start, "static") ? Kind.TOKEN_STATIC : null;
+                    case 'S':
+                        if (is(b, start, "String"))
+                            return Kind.TOKEN_STRING;
+                        return is(b, start, "System") ? Kind.TOKEN_SYSTEM : null;
+                    default:
+                        return null;
+                }
+            case 7:
+                switch (b.get(start)) {
+                    case 'b':
+                        return is(b, start, "boolean") ? Kind.TOKEN_BOOLEAN : null;
+                    case 'e':
+                        return is(b, start, "extends") ? Kind.TOKEN_EXTENDS : null;
+                    case 'p':
+                        return is(b, start, "println") ? Kind.TOKEN_PRINTLN : null;
+                    default:
+                        return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    // whether the bytes of "b" from "start" on spell "word"
+    private static boolean is(ByteBuffer b, int start, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (b.get(start + i) != word.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    // size of the input window, the stream is read in blocks
+    // of this size instead of one byte at a time.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int RECENT = 256;
+
+    private String fname; // the input file name to be compiled
+    private InputStream fstream; // input stream for the above file, or null
+    private byte[] array; // the input window of a stream, reused across refills
+    private ByteBuffer buf; // the bytes being scanned: the window, or the whole source
+    private int pos = 0; // index of the next unread byte in "buf"
+    private int limit = 0; // end of the valid bytes in "buf"
+    private int start = -1; // start of the token being scanned, or -1
+    private int base = 0; // offset in the source of buf[0]
+    private int begin; // the last token scanned is [begin, end) in "buf"
+    private int end;
+    private Symbol symbol; // the interned name of the last TOKEN_ID scanned
+    // the symbols of the last identifiers scanned, by hash; see identifier()
+    private final Symbol[] recent = new Symbol[RECENT];
+    // Line starts, to tell the line and column of an offset when a
+    // token is printed. Nothing else keeps track of lines or columns.
+    private LineMap lines;
+    private int lined = 0; // the line starts before buf[lined] are in "lines"
+    private boolean inComment = false; // whether the input starts inside a block comment
+    // the options of the compilation, and where tokens are dumped; null
+    // in the lexers of the parts of a source, which do not dump them
+    private final CompilationContext context;
+
+
+    public Lexer(CompilationContext context, String fname, InputStream fstream) {
+        this.context = context;
+        this.fname = fname;
+        this.fstream = fstream;
+        this.array = new byte[BUFFER_SIZE];
+        this.buf = ByteBuffer.wrap(array);
+        this.lines = new LineMap();
+    }
+
+    // Scan the bytes of "source" (from its position to its limit) in
+    // place, typically a file mapped by FileChannel.map(). Nothing is
+    // copied: identifier and number lexemes are slices of "source".
+    public Lexer(CompilationContext context, String fname, ByteBuffer source) {
+        this.context = context;
+        this.fname = fname;
+        this.buf = source;
+        this.pos = source.position();
+        this.limit = source.limit();
+        this.lines = new LineMap(source);
+    }
+
+    // Scan a part of a source buffer, which starts inside a block
+    // comment if "inComment" is set, with scanAll() or scanInto(). See
+    // ParallelLexer and IncrementalLexer.
+    Lexer(String fname, ByteBuffer source, boolean inComment) {
+        this(null, fname, source);
+        this.inComment = inComment;
+    }
+
+    // Scan the rest of a source, from the position of "source", a
+    // duplicate of it, with the line map of the whole source: the
+    // lines and columns of an error are those in the whole source.
+    Lexer(String fname, ByteBuffer source, LineMap lines) {
+        this(null, fname, source);
+        this.lines = lines;
+    }
+
+    // Refill the window from the stream. The bytes of a token
+    // being scanned (from "start" on) are moved to the front of the
+    // window, so that they survive the refill. The line starts in the
+    // bytes dropped are recorded first.
+    // Return false when reaching the end of the input stream, or
+    // at once when scanning a whole source buffer.
+    private boolean fill() throws IOException {
+        if (this.fstream == null)
+            return false;
+
+        int keep = (start < 0) ? limit : start;
+        if (keep > 0) {
+            if (lined < keep) {
+                lines.scan(buf, lined, keep, base);
+                lined = keep;
+            }
+            System.arraycopy(array, keep, array, 0, limit - keep);
+            base += keep;
+            pos -= keep;
+            limit -= keep;
+            lined -= keep;
+            if (start >= 0)
+                start = 0;
+        }
+        // a lexeme as long as the whole window, make room for it
+        if (limit == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+            buf = ByteBuffer.wrap(array);
+        }
+
+        int n = this.fstream.read(array, limit, array.length - limit);
+        if (n <= 0)
+            return false;
+        limit += n;
+        return true;
+    }
+
+    // Return the next byte and move past it, or -1 at the end.
+    private int read() throws IOException {
+        if (pos == limit && !fill())
+            return -1;
+        return buf.get(pos++) & 0xff;
+    }
+
+    // Return the next byte without moving past it, or -1 at the end.
+    private int peek() throws IOException {
+        if (pos == limit && !fill())
+            return -1;
+        return buf.get(pos) & 0xff;
+    }
+
+    // When called, return the kind of the next token (refer to the
+    // code "Token.java") from the input stream. The token starts at
+    // "start" and ends at "pos".
+    // Return TOKEN_EOF when reaching the end of the input stream.
+    private Kind nextTokenInternal() throws IOException {
+        if (inComment) {
+            inComment = false;
+            skipBlockComment();
+        }
+
+        int c = skipBlanks();
+        if (-1 == c) {
+            start = pos;
+            return Kind.TOKEN_EOF;
+        }
+
+        // run the automaton, by maximal munch, from the first byte
+        // of the token on; the bytes in the window are scanned with
+        // a local index, without a call per byte
+        start = pos - 1;
+        int h = Symbol.hash(0, c);
+        int state = Dfa.step(Dfa.START, c);
+        if (state == Dfa.ID)
+            return identifier(h);
+        if (Dfa.last(state))
+            return Dfa.accept(state);
+        scan:
+        do {
+            int p = pos;
+            for (; p < limit; p++) {
+                c = buf.get(p) & 0xff;
+                int next = Dfa.step(state, c);
+                if (next == Dfa.DEAD) {
+                    pos = p;
+                    break scan;
+                }
+                state = next;
+                h = Symbol.hash(h, c);
+            }
+            pos = p;
+        } while (fill());
+
+        Kind kind = Dfa.accept(state);
+        if (kind == null) {
+            // no token is spelled this way
+            throw error(start);
+        }
+        return kind;
+    }
+
+    // The rest of an identifier or a keyword, whose first byte is read
+    // and hashed into "h": the automaton stays in Dfa.ID up to its
+    // end, so each byte is only looked up in Dfa.inId().
+    //
+    // A source names the same identifiers over and over: the symbol
+    // is first looked for among the recent ones, which spares the walk
+    // of the shared, weak table of Symbol.
+    private Kind identifier(int h) throws IOException {
+        scan:
+        do {
+            int p = pos;
+            for (; p < limit; p++) {
+                int c = buf.get(p) & 0xff;
+                if (!Dfa.inId(c)) {
+                    pos = p;
+                    break scan;
+                }
+                h = Symbol.hash(h, c);
+            }
+            pos = p;
+        } while (fill());
+
+        Kind keyword = keyword(buf, start, pos);
+        if (keyword != null)
+            return keyword;
+        int i = h & (RECENT - 1);
+        Symbol s = recent[i];
+        if (s == null || !s.spells(buf, start, pos, h))
+            recent[i] = s = Symbol.symbol(buf, start, pos, h);
+        symbol = s;
+        return Kind.TOKEN_ID;
+    }
+
+    // Skip blanks and comments, in a loop: however many there are
+    // in a row, this takes no stack and allocates nothing. Return the
+    // first byte of the token after them, already read, or -1 at the
+    // end. A '/' which opens no comment is returned as such, and
+    // the automaton finds no token for it.
+    private int skipBlanks() throws IOException {
+        for (;;) {
+            int c = read();
+            switch (c) {
+                case ' ':
+                case '\n':
+                case '\r':
+                case '\t':
+                    break;
+                case '/':
+                    start = pos - 1; // keep the '/' in the window, if refilled
+                    int cc = peek();
+                    if (cc == '/' || cc == '*')
+                        start = -1;
+                    if ('/' == cc) {
+                        pos++;
+                        skipLineComment();
+                    } else if ('*' == cc) {
+                        pos++;
+                        skipBlockComment();
+                    } else
+                        return c;
+                    break;
+                default:
+                    return c;
+            }
+        }
+    }
+
+    // Skip the rest of a line comment, up to and including the '\n'
+    // or the end of the input.
+    private void skipLineComment() throws IOException {
+        do {
+            for (int p = pos; p < limit; p++) {
+                if (buf.get(p) == '\n') {
+                    pos = p + 1;
+                    return;
+                }
+            }
+            pos = limit;
+        } while (fill());
+    }
+
+    // Skip the rest of a block comment, after the "/*", up to and
+    // including the "*/" or the end of the input. The '*' of "/*"
+    // does not also close the comment, so "/*/" leaves it open.
+    private void skipBlockComment() throws IOException {
+        int pre = -1; // the byte before "p", in the comment
+        do {
+            for (int p = pos; p < limit; p++) {
+                int c = buf.get(p);
+                if (pre == '*' && c == '/') {
+                    pos = p + 1;
+                    return;
+                }
+                pre = c;
+            }
+            pos = limit;
+        } while (fill());
+    }
+
+    // Scan the next token into [begin, end).
+    private Kind next() {
+        Kind kind = null;
+
+        try {
+            kind = this.nextTokenInternal();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        begin = start;
+        end = pos;
+        start = -1;
+        return kind;
+    }
+
+    // The error of a byte no token starts with, at buf[at].
+    private LexError error(int at) {
+        if (this.fstream != null && lined < at) {
+            lines.scan(buf, lined, at, base);
+            lined = at;
+        }
+        int offset = base + at;
+        return new LexError(fname + ":" + lines.line(offset) + ":"
+                + lines.column(offset) + ": illegal character '"
+                + (char) (buf.get(at) & 0xff) + "'");
+    }
+
+    // The token just scanned. The lexeme of a source buffer stays a
+    // slice of it; that of a stream is copied out, as the window will
+    // be reused.
+    private Token token(Kind kind) {
+        int offset = base + begin;
+        if (this.fstream != null && lined < begin) {
+            lines.scan(buf, lined, begin, base);
+            lined = begin;
+        }
+        if (kind == Kind.TOKEN_ID)
+            return new Token(kind, offset, lines, symbol);
+        if (kind != Kind.TOKEN_NUM)
+            return new Token(kind, offset, lines);
+        if (this.fstream == null)
+            return new Token(kind, offset, lines, buf, begin, end);
+        return new Token(kind, offset, lines, Token.text(buf, begin, end));
+    }
+
+    public Token nextToken() {
+        Token t = token(next());
+
+        if (context.lexer.dump)
+            context.out.println(t);
+        return t;
+    }
+
+    // Lex the whole source buffer, up to and including TOKEN_EOF,
+    // into a token buffer. No Token object is created, unless the
+    // tokens are dumped.
+    @SuppressWarnings("try")
+    public TokenBuffer tokenize() {
+        TokenBuffer tokens;
+        try (Timing.Scope scope = context.timing.scope(Timing.Phase.LEX)) {
+            tokens = scanAll();
+        }
+        if (context.lexer.dump)
+            TokenWriter.dump(context, tokens);
+        return tokens;
+    }
+
+    TokenBuffer scanAll() {
+        if (this.fstream != null)
+            throw new IllegalStateException("tokenize() needs a source buffer, not a stream");
+
+        TokenBuffer tokens = new TokenBuffer(buf, lines);
+        while (scanInto(tokens) != Kind.TOKEN_EOF)
+            ;
+        return tokens;
+    }
+
+    // Scan the next token of a source buffer into "tokens", and
+    // return its kind.
+    Kind scanInto(TokenBuffer tokens) {
+        Kind kind = next();
+        tokens.add(kind, begin, end, kind == Kind.TOKEN_ID ? symbol : null);
+        return kind;
+    }
+}
@@ -0,0 +1,88 @@
+package lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// The offsets at which the lines of a source start. Tokens carry just
+// their offset in the source; a line and a column are worked out from
+// it, by a binary search here, only when a position is printed.
+//
+// A map of a source buffer is built lazily, on the first lookup. A
+// stream is not kept around, so its lexer feeds the line starts to
+// the map as it drops the bytes it has scanned.
+public class LineMap {
+    private ByteBuffer source; // to be scanned on the first lookup, or null
+    private volatile boolean built;
+    private int[] starts = new int[64]; // starts[i] is the offset of line i + 1
+    private int count = 1; // line 1 starts at offset 0, or where the buffer does
+
+    public LineMap(ByteBuffer source) {
+        this.source = source;
+        this.starts[0] = source.position();
+    }
+
+    LineMap() {
+        this.built = true;
+    }
+
+    // Record the lines starting in the bytes b[from, to), where b[i]
+    // is at offset "base + i" in the source.
+    void scan(ByteBuffer b, int from, int to, int base) {
+        for (int i = from; i < to; i++) {
+            if (b.get(i) == '\n') {
+                if (count == starts.length)
+                    starts = Arrays.copyOf(starts, count * 2);
+                starts[count++] = base + i + 1;
+            }
+        }
+    }
+
+    private void build() {
+        synchronized (this) {
+            if (!built) {
+                scan(source, source.position(), source.limit(), 0);
+                source = null;
+                built = true;
+            }
+        }
+    }
+
+    // index in "starts" of the line "offset" is on
+    private int find(int offset) {
+        if (!built)
+            build();
+        int lo = 0;
+        int hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= offset)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    // the number of lines, and the offset at which line i + 1 starts,
+    // to walk the lines along with tokens in order instead of looking
+    // each one up
+    int count() {
+        if (!built)
+            build();
+        return count;
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    // the line of "offset", from 1
+    public int line(int offset) {
+        return find(offset) + 1;
+    }
+
+    // the column of "offset" on its line, from 1, in bytes
+    public int column(int offset) {
+        return offset - starts[find(offset)] + 1;
+    }
+}
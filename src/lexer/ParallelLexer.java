@@ -0,0 +1,179 @@
+package lexer;
+
+import control.CompilationContext;
+import control.Timing;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Lex a large source buffer on several threads, into the same tokens
+// as a Lexer would.
+//
+// The source is split into parts at line starts. No token spans a
+// line, so a part boundary can only fall inside a block comment, and
+// a part is lexed like a whole source once we know whether it starts
+// inside one. That is found without lexing: each part is pre-scanned,
+// in parallel, for the comment state it ends in from either state it
+// may start in; then chaining these from the first part gives the
+// state each part starts in. The parts are then lexed in parallel,
+// and their tokens concatenated. Token offsets are already offsets in
+// the whole source, so they need no fixing.
+public class ParallelLexer {
+    // parts are at least this large, smaller sources are lexed on
+    // one thread
+    private static final int MIN_PART = 1 << 20;
+
+    // comment states at the start of a line
+    private static final int CODE = 0;
+    private static final int COMMENT = 1; // inside a block comment
+
+    private final CompilationContext context;
+    private final String fname;
+    private final ByteBuffer source;
+    private final int threads;
+
+    // lex on the number of threads of the options of "context"
+    public ParallelLexer(CompilationContext context, String fname, ByteBuffer source) {
+        this.context = context;
+        this.fname = fname;
+        this.source = source;
+        this.threads = context.lexer.threads;
+    }
+
+    // Lex the whole source buffer, like Lexer.tokenize().
+    @SuppressWarnings("try")
+    public TokenBuffer tokenize() {
+        TokenBuffer tokens;
+        try (Timing.Scope scope = context.timing.scope(Timing.Phase.LEX)) {
+            tokens = scanAll();
+        }
+        if (context.lexer.dump)
+            TokenWriter.dump(context, tokens);
+        return tokens;
+    }
+
+    TokenBuffer scanAll() {
+        int[] bounds = split(4 * threads);
+        int n = bounds.length - 1;
+        if (n == 1 || threads == 1)
+            return new Lexer(fname, source, false).scanAll();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // the state at the end of each part, from each state at its start
+            List<Callable<int[]>> scans = new ArrayList<>();
+            for (int k = 0; k < n; k++) {
+                int from = bounds[k];
+                int to = bounds[k + 1];
+                scans.add(() -> new int[]{transfer(from, to, CODE), transfer(from, to, COMMENT)});
+            }
+            List<int[]> exits = run(pool, scans);
+
+            List<Callable<TokenBuffer>> lexes = new ArrayList<>();
+            int state = CODE;
+            for (int k = 0; k < n; k++) {
+                ByteBuffer part = source.duplicate();
+                part.limit(bounds[k + 1]);
+                part.position(bounds[k]);
+                boolean inComment = (state == COMMENT);
+                lexes.add(() -> new Lexer(fname, part, inComment).scanAll());
+                state = exits.get(k)[state];
+            }
+            List<TokenBuffer> parts;
+            try {
+                parts = run(pool, lexes);
+            } catch (LexError e) {
+                // the line of the error is counted from the start of its
+                // part: lex again on one thread, to report the right one
+                return new Lexer(fname, source, false).scanAll();
+            }
+
+            // all but the last part end with a TOKEN_EOF to drop
+            int size = 0;
+            for (TokenBuffer part : parts)
+                size += part.size() - 1;
+            TokenBuffer tokens = new TokenBuffer(source, new LineMap(source), size + 1);
+            for (int k = 0; k < n; k++) {
+                TokenBuffer part = parts.get(k);
+                tokens.append(part, 0, (k == n - 1) ? part.size() : part.size() - 1);
+            }
+            return tokens;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static <T> List<T> run(ForkJoinPool pool, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> f : pool.invokeAll(tasks))
+                results.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    // Split the source into about "n" parts of at least MIN_PART bytes,
+    // each ending just after a '\n' (or at the end). Return the bounds:
+    // part k is [bounds[k], bounds[k + 1]).
+    private int[] split(int n) {
+        int from = source.position();
+        int to = source.limit();
+        int size = Math.max(MIN_PART, (to - from) / n + 1);
+
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(from);
+        int b = from + size;
+        while (b < to) {
+            while (b < to && source.get(b - 1) != '\n')
+                b++;
+            if (b < to)
+                bounds.add(b);
+            b += size;
+        }
+        bounds.add(to);
+
+        int[] result = new int[bounds.size()];
+        for (int k = 0; k < result.length; k++)
+            result[k] = bounds.get(k);
+        return result;
+    }
+
+    // The comment state after the bytes [from, to), which start at a
+    // line start in "state". This follows the comment rules of Lexer:
+    // a "//" comment runs up to the '\n', and a block comment up to
+    // the first "*/" after its "/*".
+    private int transfer(int from, int to, int state) {
+        int pre = -1; // the byte before, inside a block comment
+        int i = from;
+        while (i < to) {
+            int c = source.get(i++);
+            if (state == COMMENT) {
+                if (pre == '*' && c == '/')
+                    state = CODE;
+                pre = c;
+            } else if (c == '/' && i < to) {
+                int cc = source.get(i++);
+                if (cc == '/') {
+                    while (i < to && source.get(i++) != '\n')
+                        ;
+                } else if (cc == '*') {
+                    state = COMMENT;
+                    pre = -1;
+                }
+            }
+        }
+        return state;
+    }
+}
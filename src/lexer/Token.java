@@ -1,88 +1,143 @@
-package lexer;
-
-public class Token {
-    // Lab 1, exercise 1: read the MiniJava specification
-    // carefully, and answer these two questions:
-    //   1. whether or not one should add other token kinds?
-    //   2. which tokens come with an extra "lexeme", and
-    //      which don't?
-    // It's highly recommended that these token names are
-    // alphabetically ordered, if you add new ones.
-    public enum Kind {
-        TOKEN_ADD, // "+"
-        TOKEN_AND, // "&&"
-        TOKEN_ASSIGN, // "="
-        TOKEN_BOOLEAN, // "boolean"
-        TOKEN_CLASS, // "class"
-        TOKEN_COMMER, // ","
-        TOKEN_DOT, // "."
-        TOKEN_ELSE, // "else"
-        TOKEN_EOF, // EOF
-        TOKEN_EXTENDS, // "extends"
-        TOKEN_FALSE, // "false"
-        TOKEN_ID, // Identifier
-        TOKEN_IF, // "if"
-        TOKEN_INT, // "int"
-        TOKEN_LBRACE, // "{"
-        TOKEN_LBRACK, // "["
-        TOKEN_LENGTH, // "length"
-        TOKEN_LPAREN, // "("
-        TOKEN_LT, // "<"
-        TOKEN_MAIN, // "main"
-        TOKEN_NEW, // "new"
-        TOKEN_NOT, // "!"
-        TOKEN_NUM, // IntegerLiteral
-        // "out" is not a Java key word, but we treat it as
-        // a MiniJava keyword, which will make the
-        // compilation a little easier. Similar cases apply
-        // for "println", "System" and "String".
-        TOKEN_OUT, // "out"
-        TOKEN_PRINTLN, // "println"
-        TOKEN_PUBLIC, // "public"
-        TOKEN_RBRACE, // "}"
-        TOKEN_RBRACK, // "]"
-        TOKEN_RETURN, // "return"
-        TOKEN_RPAREN, // ")"
-        TOKEN_SEMI, // ";"
-        TOKEN_STATIC, // "static"
-        TOKEN_STRING, // "String"
-        TOKEN_SUB, // "-"
-        TOKEN_SYSTEM, // "System"
-        TOKEN_THIS, // "this"
-        TOKEN_TIMES, // "*"
-        TOKEN_TRUE, // "true"
-        TOKEN_VOID, // "void"
-        TOKEN_WHILE, // "while"
-    }
-
-    public final Kind kind; // kind of the token
-    public final String lexeme; // extra lexeme for this token, if any
-    public final Integer lineNum; // on which line of the source file this token appears
-    public final Integer columnNum;
-
-    // Some tokens don't come with lexeme but
-    // others do.
-    public Token(Kind kind, Integer lineNum, Integer columnNum) {
-        this(kind, lineNum, columnNum, null);
-    }
-
-    public Token(Kind kind, Integer lineNum, Integer columnNum, String lexeme) {
-        this.kind = kind;
-        this.lineNum = lineNum;
-        this.columnNum = columnNum;
-        this.lexeme = lexeme;
-    }
-
-    @Override
-    public String toString() {
-        String s;
-
-        // to check that the "lineNum" field has been properly set.
-        if (this.lineNum == null)
-            new util.Todo();
-
-        s = ": " + ((this.lexeme == null) ? "<NONE>" : this.lexeme) + " : at line "
-                + this.lineNum + ":" + this.columnNum;
-        return this.kind.toString() + s;
-    }
-}
+package lexer;
+
+import util.Symbol;
+
+import java.nio.ByteBuffer;
+
+public class Token {
+    // Lab 1, exercise 1: read the MiniJava specification
+    // carefully, and answer these two questions:
+    //   1. whether or not one should add other token kinds?
+    //   2. which tokens come with an extra "lexeme", and
+    //      which don't?
+    // It's highly recommended that these token names are
+    // alphabetically ordered, if you add new ones.
+    public enum Kind {
+        TOKEN_ADD, // "+"
+        TOKEN_AND, // "&&"
+        TOKEN_ASSIGN, // "="
+        TOKEN_BOOLEAN, // "boolean"
+        TOKEN_CLASS, // "class"
+        TOKEN_COMMER, // ","
+        TOKEN_DOT, // "."
+        TOKEN_ELSE, // "else"
+        TOKEN_EOF, // EOF
+        TOKEN_EXTENDS, // "extends"
+        TOKEN_FALSE, // "false"
+        TOKEN_ID, // Identifier
+        TOKEN_IF, // "if"
+        TOKEN_INT, // "int"
+        TOKEN_LBRACE, // "{"
+        TOKEN_LBRACK, // "["
+        TOKEN_LENGTH, // "length"
+        TOKEN_LPAREN, // "("
+        TOKEN_LT, // "<"
+        TOKEN_MAIN, // "main"
+        TOKEN_NEW, // "new"
+        TOKEN_NOT, // "!"
+        TOKEN_NUM, // IntegerLiteral
+        // "out" is not a Java key word, but we treat it as
+        // a MiniJava keyword, which will make the
+        // compilation a little easier. Similar cases apply
+        // for "println", "System" and "String".
+        TOKEN_OUT, // "out"
+        TOKEN_PRINTLN, // "println"
+        TOKEN_PUBLIC, // "public"
+        TOKEN_RBRACE, // "}"
+        TOKEN_RBRACK, // "]"
+        TOKEN_RETURN, // "return"
+        TOKEN_RPAREN, // ")"
+        TOKEN_SEMI, // ";"
+        TOKEN_STATIC, // "static"
+        TOKEN_STRING, // "String"
+        TOKEN_SUB, // "-"
+        TOKEN_SYSTEM, // "System"
+        TOKEN_THIS, // "this"
+        TOKEN_TIMES, // "*"
+        TOKEN_TRUE, // "true"
+        TOKEN_VOID, // "void"
+        TOKEN_WHILE, // "while"
+    }
+
+    public final Kind kind; // kind of the token
+    public final int offset; // where the token starts in the source file
+    private final LineMap lines; // to tell the line and column of "offset"
+    public final Symbol symbol; // the interned name of a TOKEN_ID
+    private String lexeme; // extra lexeme for this token, if any
+    // a lexeme may instead be a slice [start, end) of the source,
+    // turned into a string only when asked for
+    private final ByteBuffer source;
+    private final int start;
+    private final int end;
+
+    // Some tokens don't come with lexeme but
+    // others do.
+    public Token(Kind kind, int offset, LineMap lines) {
+        this(kind, offset, lines, (String) null);
+    }
+
+    public Token(Kind kind, int offset, LineMap lines, String lexeme) {
+        this.kind = kind;
+        this.offset = offset;
+        this.lines = lines;
+        this.symbol = null;
+        this.lexeme = lexeme;
+        this.source = null;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    public Token(Kind kind, int offset, LineMap lines, Symbol symbol) {
+        this.kind = kind;
+        this.offset = offset;
+        this.lines = lines;
+        this.symbol = symbol;
+        this.lexeme = symbol.name;
+        this.source = null;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    public Token(Kind kind, int offset, LineMap lines, ByteBuffer source, int start, int end) {
+        this.kind = kind;
+        this.offset = offset;
+        this.lines = lines;
+        this.symbol = null;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    // on which line of the source file this token appears
+    public int lineNum() {
+        return this.lines.line(this.offset);
+    }
+
+    public int columnNum() {
+        return this.lines.column(this.offset);
+    }
+
+    // the extra lexeme for this token, or null
+    public String lexeme() {
+        if (this.lexeme == null && this.source != null)
+            this.lexeme = text(this.source, this.start, this.end);
+        return this.lexeme;
+    }
+
+    // the bytes [start, end) of "b" as a string
+    static String text(ByteBuffer b, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++)
+            chars[i - start] = (char) (b.get(i) & 0xff);
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        String s;
+
+        s = ": " + ((this.lexeme() == null) ? "<NONE>" : this.lexeme()) + " : at line "
+                + this.lineNum() + ":" + this.columnNum();
+        return this.kind.toString() + s;
+    }
+}
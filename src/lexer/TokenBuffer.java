@@ -0,0 +1,230 @@
+package lexer;
+
+import lexer.Token.Kind;
+import util.Symbol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// All the tokens of a source, stored column-wise: the i-th token is
+// the i-th entry of each array below. This takes a few primitive
+// slots per token instead of one Token object (plus its position and
+// lexeme) per token. A token is the slice [offset, end) of the
+// source, which is also the lexeme of a TOKEN_ID or TOKEN_NUM, and a
+// TOKEN_ID also refers to the interned symbol of its name.
+public class TokenBuffer {
+    private static final Kind[] KINDS = Kind.values();
+
+    private ByteBuffer source; // the source the tokens are sliced from
+    private LineMap lines; // line starts of the source
+    private byte[] kinds; // Kind.ordinal() of each token
+    private int[] offsets;
+    private int[] ends;
+    private Symbol[] symbols; // symbol of each TOKEN_ID
+    private int size = 0; // the tokens at the front of the arrays
+    // The tokens from "back" to the end of the arrays are those after a
+    // gap, which IncrementalLexer keeps where it last edited: their
+    // offsets and ends count back from the limit of the source, so that
+    // an edit which changes the length of the source moves none of
+    // them. The gap is closed before the tokens are read: without one,
+    // "back" is the length of the arrays.
+    private int back;
+
+    public TokenBuffer(ByteBuffer source, LineMap lines) {
+        // about one token every four bytes of MiniJava source
+        this(source, lines, source.remaining() / 4);
+    }
+
+    TokenBuffer(ByteBuffer source, LineMap lines, int capacity) {
+        this.source = source;
+        this.lines = lines;
+        capacity = Math.max(16, capacity);
+        this.kinds = new byte[capacity];
+        this.offsets = new int[capacity];
+        this.ends = new int[capacity];
+        this.symbols = new Symbol[capacity];
+        this.back = capacity;
+    }
+
+    private void reserve(int n) {
+        if (size + n > back) {
+            int tail = kinds.length - back;
+            int capacity = Math.max((size + tail) * 2, size + tail + n);
+            int to = capacity - tail;
+            kinds = (byte[]) regrow(kinds, new byte[capacity], to, tail);
+            offsets = (int[]) regrow(offsets, new int[capacity], to, tail);
+            ends = (int[]) regrow(ends, new int[capacity], to, tail);
+            symbols = (Symbol[]) regrow(symbols, new Symbol[capacity], to, tail);
+            back = to;
+        }
+    }
+
+    // the tokens of array "a" copied to the larger "b", the "tail" ones
+    // after the gap from "to" on
+    private Object regrow(Object a, Object b, int to, int tail) {
+        System.arraycopy(a, 0, b, 0, size);
+        System.arraycopy(a, back, b, to, tail);
+        return b;
+    }
+
+    void add(Kind kind, int offset, int end, Symbol symbol) {
+        reserve(1);
+        kinds[size] = (byte) kind.ordinal();
+        offsets[size] = offset;
+        ends[size] = end;
+        symbols[size] = symbol;
+        size++;
+    }
+
+    // Append the tokens [from, to) of "other", which must slice the
+    // same source.
+    void append(TokenBuffer other, int from, int to) {
+        int n = to - from;
+        reserve(n);
+        System.arraycopy(other.kinds, from, kinds, size, n);
+        System.arraycopy(other.offsets, from, offsets, size, n);
+        System.arraycopy(other.ends, from, ends, size, n);
+        System.arraycopy(other.symbols, from, symbols, size, n);
+        size += n;
+    }
+
+    // ////////////////////////////////////////////////
+    // the gap, for IncrementalLexer
+
+    // Move the gap to just after the first "at" tokens. This costs the
+    // tokens between the gap and "at", not all those after it.
+    void moveGap(int at) {
+        int limit = source.limit();
+        if (at < size) {
+            int n = size - at;
+            int to = back - n;
+            move(at, to, n);
+            for (int i = to; i < back; i++) {
+                offsets[i] -= limit;
+                ends[i] -= limit;
+            }
+            Arrays.fill(symbols, at, Math.min(size, to), null);
+            size = at;
+            back = to;
+        } else if (at > size) {
+            int n = at - size;
+            move(back, size, n);
+            for (int i = size; i < at; i++) {
+                offsets[i] += limit;
+                ends[i] += limit;
+            }
+            Arrays.fill(symbols, Math.max(back, at), back + n, null);
+            size = at;
+            back += n;
+        }
+    }
+
+    private void move(int from, int to, int n) {
+        System.arraycopy(kinds, from, kinds, to, n);
+        System.arraycopy(offsets, from, offsets, to, n);
+        System.arraycopy(ends, from, ends, to, n);
+        System.arraycopy(symbols, from, symbols, to, n);
+    }
+
+    void closeGap() {
+        moveGap(size());
+    }
+
+    // the offset of the k-th token after the gap, back from the limit
+    // of the source
+    int offsetAfterGap(int k) {
+        return offsets[back + k];
+    }
+
+    int sizeAfterGap() {
+        return kinds.length - back;
+    }
+
+    // Replace the "removed" tokens just after the gap by all those of
+    // "other", before the gap. The tokens then slice the source of
+    // "other": it is the source of these tokens, edited at the gap.
+    void replaceAtGap(int removed, TokenBuffer other) {
+        Arrays.fill(symbols, back, back + removed, null);
+        back += removed;
+        append(other, 0, other.size);
+        source = other.source;
+        lines = other.lines;
+    }
+
+    // the number of tokens ending before "offset", which are the
+    // first ones, as tokens come in source order; the gap may be open
+    int endingBefore(int offset) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int end = (mid < size) ? ends[mid] : ends[mid - size + back] + source.limit();
+            if (end < offset)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // the number of tokens, TOKEN_EOF included
+    public int size() {
+        return size + kinds.length - back;
+    }
+
+    public Kind kind(int i) {
+        return KINDS[kinds[i]];
+    }
+
+    public int offset(int i) {
+        return offsets[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    public LineMap lines() {
+        return lines;
+    }
+
+    // the symbol of the i-th token, or null if it is no TOKEN_ID
+    public Symbol symbol(int i) {
+        return symbols[i];
+    }
+
+    ByteBuffer source() {
+        return source;
+    }
+
+    boolean hasLexeme(int i) {
+        return kinds[i] == Kind.TOKEN_ID.ordinal() || kinds[i] == Kind.TOKEN_NUM.ordinal();
+    }
+
+    // the lexeme of the i-th token, or null if it has none
+    public String lexeme(int i) {
+        if (!hasLexeme(i))
+            return null;
+        if (symbols[i] != null)
+            return symbols[i].name;
+        return Token.text(source, offsets[i], ends[i]);
+    }
+
+    // the value of the i-th token, a TOKEN_NUM, modulo 2^32: its
+    // range is left to be checked later
+    public int value(int i) {
+        int v = 0;
+        for (int k = offsets[i]; k < ends[i]; k++)
+            v = v * 10 + (source.get(k) - '0');
+        return v;
+    }
+
+    // the i-th token as a Token object, to print it
+    public Token token(int i) {
+        if (symbols[i] != null)
+            return new Token(kind(i), offsets[i], lines, symbols[i]);
+        if (!hasLexeme(i))
+            return new Token(kind(i), offsets[i], lines);
+        return new Token(kind(i), offsets[i], lines, source, offsets[i], ends[i]);
+    }
+}
@@ -0,0 +1,201 @@
+package lexer;
+
+import control.CompilationContext;
+import control.Control;
+import lexer.Token.Kind;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Write the tokens of a token buffer out, in one of the formats of
+// Control.ConLexer.Format:
+//
+//   TEXT  as Token.toString(), one per line:
+//           TOKEN_ID: x : at line 3:5
+//   TSV   a header line, then one line per token of tab-separated
+//         kind, line, column, offset, length and lexeme (empty if none)
+//   BIN   the bytes "TOKB", then the number of kinds and the name of
+//         each (a length byte and the bytes, in ordinal order), then
+//         the number of tokens and for each a kind byte (its ordinal),
+//         its offset and its length; numbers are big-endian 4-byte ints
+//
+// The bytes are put together straight from the columns of the buffer
+// into one large array, written out whenever it is full: no Token or
+// String is built per token. Lines are walked along with the tokens,
+// which come in source order, instead of being searched for.
+public class TokenWriter {
+    private static final Kind[] KINDS = Kind.values();
+    private static final byte[][] NAMES = new byte[KINDS.length][];
+    private static final byte[] NONE = bytes("<NONE>");
+    private static final byte[] AT_LINE = bytes(" : at line ");
+    private static final byte[] TSV_HEADER = bytes("kind\tline\tcolumn\toffset\tlength\tlexeme\n");
+    private static final byte[] MAGIC = bytes("TOKB");
+
+    static {
+        for (Kind kind : KINDS)
+            NAMES[kind.ordinal()] = bytes(kind.name());
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final Control.ConLexer.Format format;
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private int size = 0; // bytes[0, size) are to be written out
+
+    public TokenWriter(OutputStream out, Control.ConLexer.Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    // Write all the tokens, TOKEN_EOF included, to the output of
+    // "context" in the format of its options.
+    static void dump(CompilationContext context, TokenBuffer tokens) {
+        try {
+            new TokenWriter(context.out, context.lexer.format).write(tokens, 0, tokens.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Write the tokens [from, to) of "tokens", and flush.
+    public void write(TokenBuffer tokens, int from, int to) throws IOException {
+        switch (format) {
+            case TEXT:
+            case TSV:
+                writeText(tokens, from, to);
+                break;
+            case BIN:
+                writeBinary(tokens, from, to);
+                break;
+        }
+        flush();
+        out.flush();
+    }
+
+    private void writeText(TokenBuffer tokens, int from, int to) throws IOException {
+        boolean tsv = (format == Control.ConLexer.Format.TSV);
+        if (tsv)
+            put(TSV_HEADER, 0, TSV_HEADER.length);
+
+        LineMap lines = tokens.lines();
+        int count = lines.count();
+        int line = 0; // the line of the current token, from 0
+        for (int i = from; i < to; i++) {
+            int offset = tokens.offset(i);
+            if (offset < lines.start(line))
+                line = lines.line(offset) - 1;
+            while (line + 1 < count && lines.start(line + 1) <= offset)
+                line++;
+            int column = offset - lines.start(line) + 1;
+
+            byte[] name = NAMES[tokens.kind(i).ordinal()];
+            room(name.length + NONE.length + AT_LINE.length + 24);
+            put(name, 0, name.length);
+            if (tsv) {
+                bytes[size++] = '\t';
+                putInt(line + 1);
+                bytes[size++] = '\t';
+                putInt(column);
+                bytes[size++] = '\t';
+                putInt(offset);
+                bytes[size++] = '\t';
+                putInt(tokens.end(i) - offset);
+                bytes[size++] = '\t';
+                if (tokens.hasLexeme(i))
+                    putSource(tokens.source(), offset, tokens.end(i));
+                room(1);
+            } else {
+                bytes[size++] = ':';
+                bytes[size++] = ' ';
+                if (tokens.hasLexeme(i))
+                    putSource(tokens.source(), offset, tokens.end(i));
+                else
+                    put(NONE, 0, NONE.length);
+                room(AT_LINE.length + 24);
+                put(AT_LINE, 0, AT_LINE.length);
+                putInt(line + 1);
+                bytes[size++] = ':';
+                putInt(column);
+            }
+            bytes[size++] = '\n';
+        }
+    }
+
+    private void writeBinary(TokenBuffer tokens, int from, int to) throws IOException {
+        put(MAGIC, 0, MAGIC.length);
+        room(4);
+        putInt32(KINDS.length);
+        for (byte[] name : NAMES) {
+            room(1);
+            bytes[size++] = (byte) name.length;
+            put(name, 0, name.length);
+        }
+        room(4);
+        putInt32(to - from);
+        for (int i = from; i < to; i++) {
+            room(9);
+            bytes[size++] = (byte) tokens.kind(i).ordinal();
+            putInt32(tokens.offset(i));
+            putInt32(tokens.end(i) - tokens.offset(i));
+        }
+    }
+
+    // make room for "n" more bytes
+    private void room(int n) throws IOException {
+        if (size + n > bytes.length)
+            flush();
+    }
+
+    private void flush() throws IOException {
+        out.write(bytes, 0, size);
+        size = 0;
+    }
+
+    private void put(byte[] b, int from, int to) throws IOException {
+        while (from < to) {
+            if (size == bytes.length)
+                flush();
+            int n = Math.min(to - from, bytes.length - size);
+            System.arraycopy(b, from, bytes, size, n);
+            size += n;
+            from += n;
+        }
+    }
+
+    // the bytes [from, to) of the source; a lexeme may be as long as
+    // the whole buffer
+    private void putSource(ByteBuffer source, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            if (size == bytes.length)
+                flush();
+            bytes[size++] = source.get(i);
+        }
+    }
+
+    // "n" >= 0 in decimal, with room for it already made
+    private void putInt(int n) {
+        int digits = 1;
+        for (int m = n; m >= 10; m /= 10)
+            digits++;
+        size += digits;
+        for (int k = size - 1; k >= size - digits; k--) {
+            bytes[k] = (byte) ('0' + n % 10);
+            n /= 10;
+        }
+    }
+
+    private void putInt32(int n) {
+        bytes[size++] = (byte) (n >>> 24);
+        bytes[size++] = (byte) (n >>> 16);
+        bytes[size++] = (byte) (n >>> 8);
+        bytes[size++] = (byte) n;
+    }
+}
@@ -0,0 +1,179 @@
+package parser;
+
+import lexer.Token.Kind;
+import util.Bug;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The grammar of MiniJava, as in the comments of Parser, and the
+// FIRST and FOLLOW sets of its nonterminals, computed once from it.
+// A set of token kinds is a long, with the bit Kind.ordinal() set
+// for each kind in it, so that the parser tells whether a token is
+// in a set by a shift and a mask.
+//
+// The parser decides with these sets where it would otherwise
+// compare the current token with each kind that may come: a new
+// production only needs a new rule below.
+final class Grammar {
+    // The rules: a nonterminal (a String), then the symbols of one of
+    // its productions, nonterminals or token kinds. An empty
+    // production is the nonterminal alone. The binary operators are
+    // left recursive here; the parser climbs their precedence.
+    private static final Object[][] RULES = {
+            {"Program", "MainClass", "ClassDecls", Kind.TOKEN_EOF},
+            {"MainClass", Kind.TOKEN_CLASS, Kind.TOKEN_ID, Kind.TOKEN_LBRACE,
+                    Kind.TOKEN_PUBLIC, Kind.TOKEN_STATIC, Kind.TOKEN_VOID, Kind.TOKEN_MAIN,
+                    Kind.TOKEN_LPAREN, Kind.TOKEN_STRING, Kind.TOKEN_LBRACK, Kind.TOKEN_RBRACK,
+                    Kind.TOKEN_ID, Kind.TOKEN_RPAREN, Kind.TOKEN_LBRACE, "Statement",
+                    Kind.TOKEN_RBRACE, Kind.TOKEN_RBRACE},
+            {"ClassDecls", "ClassDecl", "ClassDecls"},
+            {"ClassDecls"},
+            {"ClassDecl", Kind.TOKEN_CLASS, Kind.TOKEN_ID, "Extends",
+                    Kind.TOKEN_LBRACE, "VarDecls", "MethodDecls", Kind.TOKEN_RBRACE},
+            {"Extends", Kind.TOKEN_EXTENDS, Kind.TOKEN_ID},
+            {"Extends"},
+            {"VarDecls", "VarDecl", "VarDecls"},
+            {"VarDecls"},
+            {"VarDecl", "Type", Kind.TOKEN_ID, Kind.TOKEN_SEMI},
+            {"MethodDecls", "MethodDecl", "MethodDecls"},
+            {"MethodDecls"},
+            {"MethodDecl", Kind.TOKEN_PUBLIC, "Type", Kind.TOKEN_ID,
+                    Kind.TOKEN_LPAREN, "FormalList", Kind.TOKEN_RPAREN,
+                    Kind.TOKEN_LBRACE, "VarDecls", "Statements",
+                    Kind.TOKEN_RETURN, "Exp", Kind.TOKEN_SEMI, Kind.TOKEN_RBRACE},
+            {"FormalList", "Type", Kind.TOKEN_ID, "FormalRest"},
+            {"FormalList"},
+            {"FormalRest", Kind.TOKEN_COMMER, "Type", Kind.TOKEN_ID, "FormalRest"},
+            {"FormalRest"},
+            {"Type", Kind.TOKEN_INT},
+            {"Type", Kind.TOKEN_INT, Kind.TOKEN_LBRACK, Kind.TOKEN_RBRACK},
+            {"Type", Kind.TOKEN_BOOLEAN},
+            {"Type", Kind.TOKEN_ID},
+            {"Statements", "Statement", "Statements"},
+            {"Statements"},
+            {"Statement", Kind.TOKEN_LBRACE, "Statements", Kind.TOKEN_RBRACE},
+            {"Statement", Kind.TOKEN_IF, Kind.TOKEN_LPAREN, "Exp", Kind.TOKEN_RPAREN,
+                    "Statement", Kind.TOKEN_ELSE, "Statement"},
+            {"Statement", Kind.TOKEN_WHILE, Kind.TOKEN_LPAREN, "Exp", Kind.TOKEN_RPAREN,
+                    "Statement"},
+            {"Statement", Kind.TOKEN_SYSTEM, Kind.TOKEN_DOT, Kind.TOKEN_OUT,
+                    Kind.TOKEN_DOT, Kind.TOKEN_PRINTLN, Kind.TOKEN_LPAREN, "Exp",
+                    Kind.TOKEN_RPAREN, Kind.TOKEN_SEMI},
+            {"Statement", Kind.TOKEN_ID, Kind.TOKEN_ASSIGN, "Exp", Kind.TOKEN_SEMI},
+            {"Statement", Kind.TOKEN_ID, Kind.TOKEN_LBRACK, "Exp", Kind.TOKEN_RBRACK,
+                    Kind.TOKEN_ASSIGN, "Exp", Kind.TOKEN_SEMI},
+            {"Exp", Kind.TOKEN_NOT, "Exp"},
+            {"Exp", "NotExp"},
+            {"Exp", "Exp", Kind.TOKEN_AND, "Exp"},
+            {"Exp", "Exp", Kind.TOKEN_LT, "Exp"},
+            {"Exp", "Exp", Kind.TOKEN_ADD, "Exp"},
+            {"Exp", "Exp", Kind.TOKEN_SUB, "Exp"},
+            {"Exp", "Exp", Kind.TOKEN_TIMES, "Exp"},
+            {"NotExp", "AtomExp"},
+            {"NotExp", "NotExp", Kind.TOKEN_DOT, Kind.TOKEN_ID, Kind.TOKEN_LPAREN,
+                    "ExpList", Kind.TOKEN_RPAREN},
+            {"NotExp", "NotExp", Kind.TOKEN_LBRACK, "Exp", Kind.TOKEN_RBRACK},
+            {"NotExp", "NotExp", Kind.TOKEN_DOT, Kind.TOKEN_LENGTH},
+            {"AtomExp", Kind.TOKEN_LPAREN, "Exp", Kind.TOKEN_RPAREN},
+            {"AtomExp", Kind.TOKEN_NUM},
+            {"AtomExp", Kind.TOKEN_TRUE},
+            {"AtomExp", Kind.TOKEN_FALSE},
+            {"AtomExp", Kind.TOKEN_THIS},
+            {"AtomExp", Kind.TOKEN_ID},
+            {"AtomExp", Kind.TOKEN_NEW, Kind.TOKEN_INT, Kind.TOKEN_LBRACK, "Exp",
+                    Kind.TOKEN_RBRACK},
+            {"AtomExp", Kind.TOKEN_NEW, Kind.TOKEN_ID, Kind.TOKEN_LPAREN,
+                    Kind.TOKEN_RPAREN},
+            {"ExpList", "Exp", "ExpRest"},
+            {"ExpList"},
+            {"ExpRest", Kind.TOKEN_COMMER, "Exp", "ExpRest"},
+            {"ExpRest"},
+    };
+
+    private static final Map<String, Long> first = new HashMap<>();
+    private static final Map<String, Long> follow = new HashMap<>();
+    private static final Map<String, Boolean> nullable = new HashMap<>();
+
+    private Grammar() {
+    }
+
+    static {
+        if (Kind.values().length > Long.SIZE)
+            new Bug();
+        for (Object[] rule : RULES) {
+            first.put((String) rule[0], 0L);
+            follow.put((String) rule[0], 0L);
+            nullable.put((String) rule[0], false);
+        }
+
+        // nullable and FIRST, up to a fixed point
+        boolean changed;
+        do {
+            changed = false;
+            for (Object[] rule : RULES) {
+                String left = (String) rule[0];
+                long set = first.get(left);
+                boolean empty = true; // whether rule[1, i) may derive nothing
+                for (int i = 1; i < rule.length && empty; i++) {
+                    set |= firstOf(rule[i]);
+                    empty = nullable(rule[i]);
+                }
+                if (set != first.get(left) || (empty && !nullable.get(left))) {
+                    first.put(left, set);
+                    nullable.put(left, nullable.get(left) || empty);
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        // then FOLLOW
+        do {
+            changed = false;
+            for (Object[] rule : RULES) {
+                String left = (String) rule[0];
+                // what may follow rule[i]: FIRST of the rest of the
+                // rule, and FOLLOW of "left" if the rest may derive nothing
+                long after = follow.get(left);
+                for (int i = rule.length - 1; i >= 1; i--) {
+                    Object symbol = rule[i];
+                    if (symbol instanceof String) {
+                        long set = follow.get(symbol) | after;
+                        if (set != follow.get(symbol)) {
+                            follow.put((String) symbol, set);
+                            changed = true;
+                        }
+                    }
+                    after = nullable(symbol) ? after | firstOf(symbol) : firstOf(symbol);
+                }
+            }
+        } while (changed);
+    }
+
+    private static long bit(Kind kind) {
+        return 1L << kind.ordinal();
+    }
+
+    private static long firstOf(Object symbol) {
+        if (symbol instanceof Kind)
+            return bit((Kind) symbol);
+        Long set = first.get(symbol);
+        if (set == null)
+            new Bug(); // a nonterminal with no rule
+        return set;
+    }
+
+    private static boolean nullable(Object symbol) {
+        return (symbol instanceof String) && nullable.get(symbol);
+    }
+
+    // the kinds of the tokens a "nonterminal" may start with
+    static long first(String nonterminal) {
+        return firstOf(nonterminal);
+    }
+
+    // the kinds of the tokens which may follow a "nonterminal"
+    static long follow(String nonterminal) {
+        return follow.get(nonterminal);
+    }
+}
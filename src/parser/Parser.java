@@ -1,473 +1,1277 @@
-package parser;
-
-import lexer.Lexer;
-import lexer.Token;
-import lexer.Token.Kind;
-
-public class Parser {
-    Lexer lexer;
-    Token current;
-
-    public Parser(String fname, java.io.InputStream fstream) {
-        lexer = new Lexer(fname, fstream);
-        current = lexer.nextToken();
-    }
-
-    // /////////////////////////////////////////////
-    // utility methods to connect the lexer
-    // and the parser.
-
-    private void advance() {
-        current = lexer.nextToken();
-    }
-
-    private void eatToken(Kind kind) {
-        if (kind == current.kind)
-            advance();
-        else {
-            System.out.println("Expects: " + kind.toString());
-            System.out.println("But got: " + current.kind.toString());
-            System.exit(1);
-        }
-    }
-
-    private void error() {
-        System.out.println("Syntax error: compilation aborting...\n");
-        System.exit(1);
-        return;
-    }
-
-    // ////////////////////////////////////////////////////////////
-    // below are method for parsing.
-
-    // A bunch of parsing methods to parse expressions. The messy
-    // parts are to deal with precedence and associativity.
-
-    // ExpList -> Exp ExpRest*
-    // ->
-    // ExpRest -> , Exp
-    private void parseExpList() {
-        if (current.kind == Kind.TOKEN_RPAREN)
-            return;
-        parseExp();
-        while (current.kind == Kind.TOKEN_COMMER) {
-            advance();
-            parseExp();
-        }
-        return;
-    }
-
-    // AtomExp -> (exp)
-    // -> INTEGER_LITERAL
-    // -> true
-    // -> false
-    // -> this
-    // -> id
-    // -> new int [exp]
-    // -> new id ()
-    private void parseAtomExp() {
-        switch (current.kind) {
-            case TOKEN_LPAREN:
-                advance();
-                parseExp();
-                eatToken(Kind.TOKEN_RPAREN);
-                return;
-            case TOKEN_NUM:
-                advance();
-                return;
-            case TOKEN_TRUE:
-                advance();
-                return;
-            case TOKEN_FALSE:
-                advance();
-                return;
-            case TOKEN_THIS:
-                advance();
-                return;
-            case TOKEN_ID:
-                advance();
-                return;
-            case TOKEN_NEW: {
-                advance();
-                switch (current.kind) {
-                    case TOKEN_INT:
-                        advance();
-                        eatToken(Kind.TOKEN_LBRACK);
-                        parseExp();
-                        eatToken(Kind.TOKEN_RBRACK);
-                        return;
-                    case TOKEN_ID:
-                        advance();
-                        eatToken(Kind.TOKEN_LPAREN);
-                        eatToken(Kind.TOKEN_RPAREN);
-                        return;
-                    default:
-                        error();
-                        return;
-                }
-            }
-            default:
-                error();
-                return;
-        }
-    }
-
-    // NotExp -> AtomExp
-    // -> AtomExp .id (expList)
-    // -> AtomExp [exp]
-    // -> AtomExp .length
-    private void parseNotExp() {
-        parseAtomExp();
-        while (current.kind == Kind.TOKEN_DOT || current.kind == Kind.TOKEN_LBRACK) {
-            if (current.kind == Kind.TOKEN_DOT) {
-                advance();
-                if (current.kind == Kind.TOKEN_LENGTH) {
-                    advance();
-                    return;
-                }
-                eatToken(Kind.TOKEN_ID);
-                eatToken(Kind.TOKEN_LPAREN);
-                parseExpList();
-                eatToken(Kind.TOKEN_RPAREN);
-            } else {
-                advance();
-                parseExp();
-                eatToken(Kind.TOKEN_RBRACK);
-            }
-        }
-        return;
-    }
-
-    // TimesExp -> ! TimesExp
-    // -> NotExp
-    private void parseTimesExp() {
-        while (current.kind == Kind.TOKEN_NOT) {
-            advance();
-        }
-        parseNotExp();
-        return;
-    }
-
-    // AddSubExp -> TimesExp * TimesExp
-    // -> TimesExp
-    private void parseAddSubExp() {
-        parseTimesExp();
-        while (current.kind == Kind.TOKEN_TIMES) {
-            advance();
-            parseTimesExp();
-        }
-        return;
-    }
-
-    // LtExp -> AddSubExp + AddSubExp
-    // -> AddSubExp - AddSubExp
-    // -> AddSubExp
-    private void parseLtExp() {
-        parseAddSubExp();
-        while (current.kind == Kind.TOKEN_ADD || current.kind == Kind.TOKEN_SUB) {
-            advance();
-            parseAddSubExp();
-        }
-        return;
-    }
-
-    // AndExp -> LtExp < LtExp
-    // -> LtExp
-    private void parseAndExp() {
-        parseLtExp();
-        while (current.kind == Kind.TOKEN_LT) {
-            advance();
-            parseLtExp();
-        }
-        return;
-    }
-
-    // Exp -> AndExp && AndExp
-    // -> AndExp
-    private void parseExp() {
-        parseAndExp();
-        while (current.kind == Kind.TOKEN_AND) {
-            advance();
-            parseAndExp();
-        }
-        return;
-    }
-
-    // Statement -> { Statement* }
-    // -> if ( Exp ) Statement else Statement
-    // -> while ( Exp ) Statement
-    // -> System.out.println ( Exp ) ;
-    // -> id = Exp ;
-    // -> id [ Exp ]= Exp ;
-    private void parseStatement() {
-        // Lab1. Exercise 4: Fill in the missing code
-        // to parse a statement.
-        switch (current.kind) {
-            case TOKEN_LBRACE:
-                advance();
-                parseStatements();
-                eatToken(Kind.TOKEN_RBRACE);
-                return;
-            case TOKEN_IF:
-                advance();
-                eatToken(Kind.TOKEN_LPAREN);
-                parseExp();
-                eatToken(Kind.TOKEN_RPAREN);
-                parseStatement();
-                eatToken(Kind.TOKEN_ELSE);
-                parseStatement();
-                return;
-            case TOKEN_WHILE:
-                advance();
-                eatToken(Kind.TOKEN_LPAREN);
-                parseExp();
-                eatToken(Kind.TOKEN_RPAREN);
-                parseStatement();
-                return;
-            case TOKEN_SYSTEM:
-                advance();
-                eatToken(Kind.TOKEN_DOT);
-                eatToken(Kind.TOKEN_OUT);
-                eatToken(Kind.TOKEN_DOT);
-                eatToken(Kind.TOKEN_PRINTLN);
-                eatToken(Kind.TOKEN_LPAREN);
-                parseExp();
-                eatToken(Kind.TOKEN_RPAREN);
-                eatToken(Kind.TOKEN_SEMI);
-                return;
-            case TOKEN_ID:
-                advance();
-                switch (current.kind) {
-                    case TOKEN_ASSIGN:
-                        advance();
-                        parseExp();
-                        eatToken(Kind.TOKEN_SEMI);
-                        return;
-                    case TOKEN_LBRACK:
-                        advance();
-                        parseExp();
-                        eatToken(Kind.TOKEN_RBRACK);
-                        eatToken(Kind.TOKEN_ASSIGN);
-                        parseExp();
-                        eatToken(Kind.TOKEN_SEMI);
-                        return;
-                    default:
-                        error();
-                        return;
-                }
-            default:
-                error();
-                return;
-
-
-
-        }
-    }
-
-    // Statements -> Statement Statements
-    // ->
-    private void parseStatements() {
-        while (current.kind == Kind.TOKEN_LBRACE || current.kind == Kind.TOKEN_IF
-                || current.kind == Kind.TOKEN_WHILE
-                || current.kind == Kind.TOKEN_SYSTEM || current.kind == Kind.TOKEN_ID) {
-            parseStatement();
-        }
-        return;
-    }
-
-    // Type -> int []
-    // -> boolean
-    // -> int
-    // -> id
-    private void parseType() {
-        // Lab1. Exercise 4: Fill in the missing code
-        // to parse a type.
-        switch (current.kind) {
-            case TOKEN_INT:
-                advance();
-                if (current.kind == Kind.TOKEN_LBRACK) {
-                    advance();
-                    eatToken(Kind.TOKEN_RBRACK);
-                }
-                return;
-            case TOKEN_BOOLEAN:
-                advance();
-                return;
-            case TOKEN_ID:
-                advance();
-                return;
-            default:
-                error();
-                return;
-        }
-    }
-
-    // VarDecl -> Type id ;
-    private void parseVarDecl() {
-        // to parse the "Type" nonterminal in this method, instead of writing
-        // a fresh one.
-        parseType();
-        eatToken(Kind.TOKEN_ID);
-        eatToken(Kind.TOKEN_SEMI);
-        return;
-    }
-
-    // VarDecls -> VarDecl VarDecls
-    // ->
-    private void parseVarDecls() {
-        while (current.kind == Kind.TOKEN_INT || current.kind == Kind.TOKEN_BOOLEAN
-                || current.kind == Kind.TOKEN_ID) {
-            parseVarDecl();
-        }
-        return;
-    }
-
-    // FormalList -> Type id FormalRest*
-    // ->
-    // FormalRest -> , Type id
-    private void parseFormalList() {
-        if (current.kind == Kind.TOKEN_INT || current.kind == Kind.TOKEN_BOOLEAN
-                || current.kind == Kind.TOKEN_ID) {
-            parseType();
-            eatToken(Kind.TOKEN_ID);
-            while (current.kind == Kind.TOKEN_COMMER) {
-                advance();
-                parseType();
-                eatToken(Kind.TOKEN_ID);
-            }
-        }
-        return;
-    }
-
-    // Method -> public Type id ( FormalList )
-    // { VarDecl* Statement* return Exp ;}
-    private void parseMethod() {
-        // Lab1. Exercise 4: Fill in the missing code
-        // to parse a method.
-        eatToken(Kind.TOKEN_PUBLIC);
-        parseType();
-        eatToken(Kind.TOKEN_ID);
-
-        eatToken(Kind.TOKEN_LPAREN);
-        parseFormalList();
-        eatToken(Kind.TOKEN_RPAREN);
-
-        eatToken(Kind.TOKEN_LBRACE);
-
-        while (current.kind == Kind.TOKEN_INT || current.kind == Kind.TOKEN_BOOLEAN
-                || current.kind == Kind.TOKEN_ID) {
-            if (current.kind == Kind.TOKEN_ID) {
-                advance();
-                if (current.kind == Kind.TOKEN_ID) {
-                    advance();
-                    eatToken(Kind.TOKEN_SEMI);
-                } else if (current.kind == Kind.TOKEN_ASSIGN) {
-                    advance();
-                    parseExp();
-                    eatToken(Kind.TOKEN_SEMI);
-                    break;
-                } else if (current.kind == Kind.TOKEN_LBRACK) {
-                    advance();
-                    parseExp();
-                    eatToken(Kind.TOKEN_RBRACK);
-                    eatToken(Kind.TOKEN_ASSIGN);
-                    parseExp();
-                    eatToken(Kind.TOKEN_SEMI);
-                    break;
-                } else {
-                    error();
-                    return;
-                }
-            } else {
-                parseVarDecl();
-            }
-        }
-
-        parseStatements();
-
-        eatToken(Kind.TOKEN_RETURN);
-        parseExp();
-        eatToken(Kind.TOKEN_SEMI);
-
-        eatToken(Kind.TOKEN_RBRACE);
-
-        return;
-    }
-
-    // MethodDecls -> MethodDecl MethodDecls
-    // ->
-    private void parseMethodDecls() {
-        while (current.kind == Kind.TOKEN_PUBLIC) {
-            parseMethod();
-        }
-        return;
-    }
-
-    // ClassDecl -> class id { VarDecl* MethodDecl* }
-    // -> class id extends id { VarDecl* MethodDecl* }
-    private void parseClassDecl() {
-        eatToken(Kind.TOKEN_CLASS);
-        eatToken(Kind.TOKEN_ID);
-        if (current.kind == Kind.TOKEN_EXTENDS) {
-            eatToken(Kind.TOKEN_EXTENDS);
-            eatToken(Kind.TOKEN_ID);
-        }
-        eatToken(Kind.TOKEN_LBRACE);
-        parseVarDecls();
-        parseMethodDecls();
-        eatToken(Kind.TOKEN_RBRACE);
-        return;
-    }
-
-    // ClassDecls -> ClassDecl ClassDecls
-    // ->
-    private void parseClassDecls() {
-        while (current.kind == Kind.TOKEN_CLASS) {
-            parseClassDecl();
-        }
-        return;
-    }
-
-    // MainClass -> class id
-    // {
-    // public static void main ( String [] id )
-    // {
-    // Statement
-    // }
-    // }
-    private void parseMainClass() {
-        // Lab1. Exercise 4: Fill in the missing code
-        // to parse a main class as described by the
-        // grammar above.
-        eatToken(Kind.TOKEN_CLASS);
-        eatToken(Kind.TOKEN_ID);
-        eatToken(Kind.TOKEN_LBRACE);
-        eatToken(Kind.TOKEN_PUBLIC);
-        eatToken(Kind.TOKEN_STATIC);
-        eatToken(Kind.TOKEN_VOID);
-        eatToken(Kind.TOKEN_MAIN);
-        eatToken(Kind.TOKEN_LPAREN);
-        eatToken(Kind.TOKEN_STRING);
-        eatToken(Kind.TOKEN_LBRACK);
-        eatToken(Kind.TOKEN_RBRACK);
-        eatToken(Kind.TOKEN_ID);
-        eatToken(Kind.TOKEN_RPAREN);
-        eatToken(Kind.TOKEN_LBRACE);
-        parseStatement();
-        eatToken(Kind.TOKEN_RBRACE);
-        eatToken(Kind.TOKEN_RBRACE);
-    }
-
-    // Program -> MainClass ClassDecl*
-    private void parseProgram() {
-        parseMainClass();
-        parseClassDecls();
-        eatToken(Kind.TOKEN_EOF);
-        return;
-    }
-
-    public void parse() {
-        parseProgram();
-        return;
-    }
-}
+package parser;
+
+import ast.Ast;
+import control.CompilationContext;
+import control.Timing;
+import lexer.Lexer;
+import lexer.LineMap;
+import lexer.ParallelLexer;
+import lexer.Token.Kind;
+import lexer.TokenBuffer;
+import util.Bug;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class Parser {
+    // the binding power of each binary operator, and its node, by
+    // Kind.ordinal(); the power of other tokens is 0
+    private static final int[] POWER = new int[Kind.values().length];
+    private static final Ast.Kind[] BINARY = new Ast.Kind[Kind.values().length];
+    private static final int PREFIX = 5; // the power of "!", above all of them
+
+    static {
+        binary(Kind.TOKEN_AND, 1, Ast.Kind.AND);
+        binary(Kind.TOKEN_LT, 2, Ast.Kind.LT);
+        binary(Kind.TOKEN_ADD, 3, Ast.Kind.ADD);
+        binary(Kind.TOKEN_SUB, 3, Ast.Kind.SUB);
+        binary(Kind.TOKEN_TIMES, 4, Ast.Kind.TIMES);
+    }
+
+    private static void binary(Kind token, int power, Ast.Kind node) {
+        POWER[token.ordinal()] = power;
+        BINARY[token.ordinal()] = node;
+    }
+
+    // the sets of token kinds the parser decides with, from the
+    // grammar (see Grammar): each test is one shift and mask of the
+    // current Kind.ordinal()
+    private static final long FIRST_STATEMENT = Grammar.first("Statement");
+    private static final long FIRST_TYPE = Grammar.first("Type");
+    private static final long FIRST_CLASS = Grammar.first("ClassDecl");
+    private static final long FIRST_METHOD = Grammar.first("MethodDecl");
+    private static final long FOLLOW_EXP_LIST = Grammar.follow("ExpList");
+    private static final long FOLLOW_STATEMENTS = Grammar.follow("Statements");
+    // the tokens recover() stops at without eating them
+    private static final long STOPS = FIRST_METHOD | FIRST_CLASS | 1L << Kind.TOKEN_RBRACE.ordinal()
+            | 1L << Kind.TOKEN_EOF.ordinal();
+
+    // the options of the compilation; the parsers of the classes parsed
+    // in parallel only read them
+    final CompilationContext context;
+    String fname;
+    TokenBuffer tokens; // all the tokens, lexed up front
+    int index; // index of the current token in "tokens"
+    Kind current; // kind of the current token
+    Ast ast; // the tree being built, from parse() on
+    boolean deep; // to parse statements and expressions without recursion, see below
+    boolean lazy; // to skip the bodies of methods, see parseBody()
+    // the index of the "{" of the body of each METHOD skipped, plus
+    // one, by node; 0 for the other nodes
+    private int[] bodies = new int[0];
+    int threads; // > 1 to parse classes in parallel, see parseClassesInParallel()
+    private List<String> errors = new ArrayList<>(); // see error()
+    private int quiet = -1; // no error is reported at this token, see recover()
+
+    public Parser(CompilationContext context, String fname, InputStream fstream) throws IOException {
+        this(context, fname, readAll(fstream));
+    }
+
+    public Parser(CompilationContext context, String fname, ByteBuffer source) {
+        this(context, fname, lex(context, fname, source), 0);
+    }
+
+    // a parser of "tokens" from the token "index" on; its tree is made
+    // by parse(), or by its caller
+    private Parser(CompilationContext context, String fname, TokenBuffer tokens, int index) {
+        this.context = context;
+        this.fname = fname;
+        this.tokens = tokens;
+        this.index = index;
+        current = tokens.kind(index);
+        deep = context.parser.deep;
+        lazy = context.parser.lazy;
+        threads = context.parser.threads;
+    }
+
+    private static TokenBuffer lex(CompilationContext context, String fname, ByteBuffer source) {
+        if (context.lexer.threads > 1)
+            return new ParallelLexer(context, fname, source).tokenize();
+        return new Lexer(context, fname, source).tokenize();
+    }
+
+    // an empty tree for the tokens up to "end", with room for about
+    // one node every two tokens
+    private Ast tree(int end) {
+        return new Ast((end - index) / 2);
+    }
+
+    private static ByteBuffer readAll(InputStream fstream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] block = new byte[1 << 16];
+        int n;
+        while ((n = fstream.read(block)) != -1)
+            out.write(block, 0, n);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    // /////////////////////////////////////////////
+    // utility methods to connect the lexer
+    // and the parser.
+
+    private void advance() {
+        if (current != Kind.TOKEN_EOF)
+            current = tokens.kind(++index);
+    }
+
+    // The kind of the k-th token after the current one (the current
+    // one for k = 0), or TOKEN_EOF past the end. All the tokens are
+    // in "tokens" already, so looking ahead is just indexing.
+    private Kind peek(int k) {
+        int i = index + k;
+        return (i < tokens.size()) ? tokens.kind(i) : Kind.TOKEN_EOF;
+    }
+
+    private void eatToken(Kind kind) {
+        if (kind == current)
+            advance();
+        else
+            error("expects " + kind + ", but got " + current);
+    }
+
+    // the offset of the current token in the source
+    private int offset() {
+        return tokens.offset(index);
+    }
+
+    // Eat a TOKEN_ID, and return the index of its name in the tree.
+    private int eatName() {
+        int name = (current == Kind.TOKEN_ID) ? ast.intern(tokens.symbol(index)) : Ast.NONE;
+        eatToken(Kind.TOKEN_ID);
+        return name;
+    }
+
+    // whether the current token is in "set"
+    private boolean at(long set) {
+        return ((set >>> current.ordinal()) & 1) != 0;
+    }
+
+    private void error() {
+        error("syntax error at " + current);
+    }
+
+    // ////////////////////////////////////////////////////////////
+    // Errors are recovered from in panic mode. An error is added to
+    // "errors", with the position of the current token, and unwinds
+    // the parse by a SyntaxError up to the nearest point which can go
+    // on: the list of statements, fields or methods being parsed, the
+    // returned exp of a method, or the list of classes. There, tokens
+    // are skipped up to one the parse may go on from (see recover()),
+    // and the statement or declaration is left out of the tree.
+    //
+    // An error at the very token where the last recovery stopped is
+    // not reported: it comes from the previous one. Such a token is
+    // skipped by the list of statements or methods it stopped in (see
+    // skipStray()), so that the error does not unwind any further.
+
+    private static final class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SyntaxError() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final SyntaxError SYNTAX_ERROR = new SyntaxError();
+
+    private void error(String message) {
+        if (index != quiet) {
+            int offset = offset();
+            LineMap lines = tokens.lines();
+            errors.add(fname + ":" + lines.line(offset) + ":" + lines.column(offset)
+                    + ": " + message);
+        }
+        throw SYNTAX_ERROR;
+    }
+
+    // Skip tokens up to a ";" (eaten), a "}" closing a "{" skipped
+    // here (eaten), or a "}" closing an enclosing one, a "public"
+    // (starting a method, as one never is inside braces), a "class"
+    // or the end of the file (not eaten): one of STOPS.
+    private void recover() {
+        int depth = 0;
+        for (;;) {
+            if (current == Kind.TOKEN_SEMI && depth == 0) {
+                advance();
+                break;
+            }
+            if (current == Kind.TOKEN_LBRACE)
+                depth++;
+            else if (current == Kind.TOKEN_RBRACE) {
+                if (depth == 0)
+                    break;
+                if (--depth == 0) {
+                    advance();
+                    break;
+                }
+            } else if (current == Kind.TOKEN_PUBLIC || current == Kind.TOKEN_CLASS
+                    || current == Kind.TOKEN_EOF)
+                break;
+            advance();
+        }
+        quiet = index;
+    }
+
+    // Skip the current token, which can neither go on nor end the
+    // list being parsed, as an error, and what recover() skips after
+    // it. It is not one of STOPS, so the parse goes on.
+    private void skipStray() {
+        try {
+            error();
+        } catch (SyntaxError e) {
+            recover();
+        }
+    }
+
+    // Skip tokens up to the next "class", or the end of the file.
+    private void recoverClass() {
+        while (current != Kind.TOKEN_CLASS && current != Kind.TOKEN_EOF)
+            advance();
+        quiet = index;
+    }
+
+    // The errors found, in source order, each as
+    // file:line:column: message
+    public List<String> errors() {
+        return errors;
+    }
+
+    // ////////////////////////////////////////////////////////////
+    // below are method for parsing.
+
+    // A bunch of parsing methods to parse expressions. The messy
+    // parts are to deal with precedence and associativity.
+
+    // ExpList -> Exp ExpRest*
+    // ->
+    // ExpRest -> , Exp
+    // The expressions are pushed as slots of the call.
+    private void parseExpList() {
+        if (at(FOLLOW_EXP_LIST))
+            return;
+        ast.push(parseExp());
+        while (current == Kind.TOKEN_COMMER) {
+            advance();
+            ast.push(parseExp());
+        }
+        return;
+    }
+
+    // AtomExp -> (exp)
+    // -> INTEGER_LITERAL
+    // -> true
+    // -> false
+    // -> this
+    // -> id
+    // -> new int [exp]
+    // -> new id ()
+    private int parseAtomExp() {
+        int offset = offset();
+        int exp;
+        switch (current) {
+            case TOKEN_LPAREN:
+                advance();
+                exp = parseExp();
+                eatToken(Kind.TOKEN_RPAREN);
+                return exp;
+            case TOKEN_NUM:
+                exp = ast.node(Ast.Kind.NUM, offset, tokens.value(index));
+                advance();
+                return exp;
+            case TOKEN_TRUE:
+                advance();
+                return ast.node(Ast.Kind.TRUE, offset);
+            case TOKEN_FALSE:
+                advance();
+                return ast.node(Ast.Kind.FALSE, offset);
+            case TOKEN_THIS:
+                advance();
+                return ast.node(Ast.Kind.THIS, offset);
+            case TOKEN_ID:
+                return ast.node(Ast.Kind.ID, offset, eatName());
+            case TOKEN_NEW: {
+                advance();
+                switch (current) {
+                    case TOKEN_INT:
+                        advance();
+                        eatToken(Kind.TOKEN_LBRACK);
+                        exp = parseExp();
+                        eatToken(Kind.TOKEN_RBRACK);
+                        return ast.node(Ast.Kind.NEW_INT_ARRAY, offset, exp);
+                    case TOKEN_ID:
+                        int name = eatName();
+                        eatToken(Kind.TOKEN_LPAREN);
+                        eatToken(Kind.TOKEN_RPAREN);
+                        return ast.node(Ast.Kind.NEW_OBJECT, offset, name);
+                    default:
+                        error();
+                        return Ast.NONE;
+                }
+            }
+            default:
+                error();
+                return Ast.NONE;
+        }
+    }
+
+    // NotExp -> AtomExp
+    // -> AtomExp .id (expList)
+    // -> AtomExp [exp]
+    // -> AtomExp .length
+    private int parseNotExp() {
+        int exp = parseAtomExp();
+        int offset = ast.offset(exp);
+        while (current == Kind.TOKEN_DOT || current == Kind.TOKEN_LBRACK) {
+            if (current == Kind.TOKEN_DOT) {
+                advance();
+                if (current == Kind.TOKEN_LENGTH) {
+                    advance();
+                    return ast.node(Ast.Kind.LENGTH, offset, exp);
+                }
+                int mark = ast.mark();
+                ast.push(exp);
+                ast.push(eatName());
+                eatToken(Kind.TOKEN_LPAREN);
+                parseExpList();
+                eatToken(Kind.TOKEN_RPAREN);
+                exp = ast.make(Ast.Kind.CALL, offset, mark);
+            } else {
+                advance();
+                int index = parseExp();
+                eatToken(Kind.TOKEN_RBRACK);
+                exp = ast.node(Ast.Kind.ARRAY_SELECT, offset, exp, index);
+            }
+        }
+        return exp;
+    }
+
+    // Exp -> ! Exp
+    // -> NotExp
+    // -> Exp op Exp
+    // op -> && | < | + | - | *
+    //
+    // by precedence climbing: the binary operators are all left
+    // associative, and bind tighter from && to * (see POWER); a "!"
+    // binds tighter than all of them. An operand costs one call to
+    // parseNotExp(), instead of one call per level of precedence.
+    private int parseExp() {
+        if (deep)
+            return parseDeepExp();
+        return parseExp(1);
+    }
+
+    // an Exp whose operators bind with a power of at least "min"
+    private int parseExp(int min) {
+        int exp;
+        if (current == Kind.TOKEN_NOT) {
+            int offset = offset();
+            advance();
+            exp = ast.node(Ast.Kind.NOT, offset, parseExp(PREFIX));
+        } else
+            exp = parseNotExp();
+        for (;;) {
+            int power = POWER[current.ordinal()];
+            if (power < min)
+                return exp;
+            Ast.Kind kind = BINARY[current.ordinal()];
+            advance();
+            exp = ast.node(kind, ast.offset(exp), exp, parseExp(power + 1));
+        }
+    }
+
+    // Statement -> { Statement* }
+    // -> if ( Exp ) Statement else Statement
+    // -> while ( Exp ) Statement
+    // -> System.out.println ( Exp ) ;
+    // -> id = Exp ;
+    // -> id [ Exp ]= Exp ;
+    private int parseStatement() {
+        // Lab1. Exercise 4: Fill in the missing code
+        // to parse a statement.
+        if (deep)
+            return parseDeepStatement();
+        int offset = offset();
+        int exp;
+        switch (current) {
+            case TOKEN_LBRACE: {
+                advance();
+                int mark = ast.mark();
+                parseStatements();
+                eatToken(Kind.TOKEN_RBRACE);
+                return ast.make(Ast.Kind.BLOCK, offset, mark);
+            }
+            case TOKEN_IF: {
+                advance();
+                eatToken(Kind.TOKEN_LPAREN);
+                exp = parseExp();
+                eatToken(Kind.TOKEN_RPAREN);
+                int then = parseStatement();
+                eatToken(Kind.TOKEN_ELSE);
+                return ast.node(Ast.Kind.IF, offset, exp, then, parseStatement());
+            }
+            case TOKEN_WHILE:
+                advance();
+                eatToken(Kind.TOKEN_LPAREN);
+                exp = parseExp();
+                eatToken(Kind.TOKEN_RPAREN);
+                return ast.node(Ast.Kind.WHILE, offset, exp, parseStatement());
+            case TOKEN_SYSTEM:
+                advance();
+                eatToken(Kind.TOKEN_DOT);
+                eatToken(Kind.TOKEN_OUT);
+                eatToken(Kind.TOKEN_DOT);
+                eatToken(Kind.TOKEN_PRINTLN);
+                eatToken(Kind.TOKEN_LPAREN);
+                exp = parseExp();
+                eatToken(Kind.TOKEN_RPAREN);
+                eatToken(Kind.TOKEN_SEMI);
+                return ast.node(Ast.Kind.PRINT, offset, exp);
+            case TOKEN_ID:
+                return parseAssign(offset, eatName());
+            default:
+                error();
+                return Ast.NONE;
+        }
+    }
+
+    // The rest of a statement starting with the name "name":
+    // -> = Exp ;
+    // -> [ Exp ]= Exp ;
+    private int parseAssign(int offset, int name) {
+        int exp;
+        switch (current) {
+            case TOKEN_ASSIGN:
+                advance();
+                exp = parseExp();
+                eatToken(Kind.TOKEN_SEMI);
+                return ast.node(Ast.Kind.ASSIGN, offset, name, exp);
+            case TOKEN_LBRACK:
+                advance();
+                int index = parseExp();
+                eatToken(Kind.TOKEN_RBRACK);
+                eatToken(Kind.TOKEN_ASSIGN);
+                exp = parseExp();
+                eatToken(Kind.TOKEN_SEMI);
+                return ast.node(Ast.Kind.ARRAY_ASSIGN, offset, name, index, exp);
+            default:
+                error();
+                return Ast.NONE;
+        }
+    }
+
+    // Statements -> Statement Statements
+    // ->
+    // The statements are pushed as slots of the enclosing node. They
+    // end at a token of FOLLOW(Statements) or of STOPS; any other
+    // token is skipped as an error.
+    private void parseStatements() {
+        while (!endsStatements()) {
+            if (!startsStatement()) {
+                skipStray();
+                continue;
+            }
+            int mark = ast.mark();
+            int frame = top;
+            try {
+                ast.push(parseStatement());
+            } catch (SyntaxError e) {
+                ast.popTo(mark);
+                top = frame;
+                recover();
+            }
+        }
+        return;
+    }
+
+    private boolean endsStatements() {
+        return at(FOLLOW_STATEMENTS | STOPS);
+    }
+
+    // Type -> int []
+    // -> boolean
+    // -> int
+    // -> id
+    private int parseType() {
+        // Lab1. Exercise 4: Fill in the missing code
+        // to parse a type.
+        int offset = offset();
+        switch (current) {
+            case TOKEN_INT:
+                advance();
+                if (current == Kind.TOKEN_LBRACK) {
+                    advance();
+                    eatToken(Kind.TOKEN_RBRACK);
+                    return ast.node(Ast.Kind.INT_ARRAY, offset);
+                }
+                return ast.node(Ast.Kind.INT, offset);
+            case TOKEN_BOOLEAN:
+                advance();
+                return ast.node(Ast.Kind.BOOLEAN, offset);
+            case TOKEN_ID:
+                return ast.node(Ast.Kind.CLASS_TYPE, offset, eatName());
+            default:
+                error();
+                return Ast.NONE;
+        }
+    }
+
+    // VarDecl -> Type id ;
+    private int parseVarDecl() {
+        // to parse the "Type" nonterminal in this method, instead of writing
+        // a fresh one.
+        int type = parseType();
+        int decl = ast.node(Ast.Kind.VAR_DECL, ast.offset(type), type, eatName());
+        eatToken(Kind.TOKEN_SEMI);
+        return decl;
+    }
+
+    // whether the current token starts a VarDecl: a type, and for a
+    // class type, an id followed by another one. An id followed by
+    // anything else starts a statement: FIRST(VarDecl) and
+    // FIRST(Statement) share TOKEN_ID, so this one decision is LL(2).
+    private boolean startsVarDecl() {
+        return at(FIRST_TYPE) && (current != Kind.TOKEN_ID || peek(1) == Kind.TOKEN_ID);
+    }
+
+    // VarDecls -> VarDecl VarDecls
+    // ->
+    // Return a LIST of the declarations.
+    private int parseVarDecls() {
+        int offset = offset();
+        int mark = ast.mark();
+        while (startsVarDecl()) {
+            int item = ast.mark();
+            try {
+                ast.push(parseVarDecl());
+            } catch (SyntaxError e) {
+                ast.popTo(item);
+                recover();
+            }
+        }
+        return ast.make(Ast.Kind.LIST, offset, mark);
+    }
+
+    // FormalList -> Type id FormalRest*
+    // ->
+    // FormalRest -> , Type id
+    // Return a LIST of VAR_DECL.
+    private int parseFormalList() {
+        int offset = offset();
+        int mark = ast.mark();
+        if (at(FIRST_TYPE)) {
+            int type = parseType();
+            ast.push(ast.node(Ast.Kind.VAR_DECL, ast.offset(type), type, eatName()));
+            while (current == Kind.TOKEN_COMMER) {
+                advance();
+                type = parseType();
+                ast.push(ast.node(Ast.Kind.VAR_DECL, ast.offset(type), type, eatName()));
+            }
+        }
+        return ast.make(Ast.Kind.LIST, offset, mark);
+    }
+
+    // Method -> public Type id ( FormalList )
+    // { VarDecl* Statement* return Exp ;}
+    private int parseMethod() {
+        // Lab1. Exercise 4: Fill in the missing code
+        // to parse a method.
+        int offset = offset();
+        eatToken(Kind.TOKEN_PUBLIC);
+        int type = parseType();
+        int name = eatName();
+
+        eatToken(Kind.TOKEN_LPAREN);
+        int formals = parseFormalList();
+        eatToken(Kind.TOKEN_RPAREN);
+
+        int mark = ast.mark();
+        ast.push(type);
+        ast.push(name);
+        ast.push(formals);
+        if (!lazy) {
+            parseMethodBody();
+            return ast.make(Ast.Kind.METHOD, offset, mark);
+        }
+
+        int body = index;
+        skipBraces();
+        ast.push(Ast.NONE);
+        ast.push(Ast.NONE);
+        ast.push(Ast.NONE);
+        int method = ast.make(Ast.Kind.METHOD, offset, mark);
+        skipped(method, body);
+        return method;
+    }
+
+    // the body of "method", from the token "body", was skipped
+    private void skipped(int method, int body) {
+        if (method >= bodies.length)
+            bodies = Arrays.copyOf(bodies, Math.max(method + 1, bodies.length * 2));
+        bodies[method] = body + 1;
+    }
+
+    // MethodBody -> { VarDecl* Statement* return Exp ;}
+    // The LIST of locals, the LIST of statements and the returned
+    // exp are pushed as slots of the method.
+    private void parseMethodBody() {
+        eatToken(Kind.TOKEN_LBRACE);
+
+        ast.push(parseVarDecls());
+
+        int offset = offset();
+        int mark = ast.mark();
+        parseStatements();
+        ast.push(ast.make(Ast.Kind.LIST, offset, mark));
+
+        mark = ast.mark();
+        int frame = top;
+        try {
+            eatToken(Kind.TOKEN_RETURN);
+            ast.push(parseExp());
+            eatToken(Kind.TOKEN_SEMI);
+        } catch (SyntaxError e) {
+            ast.popTo(mark);
+            top = frame;
+            ast.push(Ast.NONE);
+            recover();
+        }
+
+        // what is left up to the "}" still belongs to the method
+        while (!at(STOPS))
+            skipStray();
+        eatToken(Kind.TOKEN_RBRACE);
+    }
+
+    // Skip the tokens from the current "{" up to its matching "}",
+    // both included, by counting braces only.
+    private void skipBraces() {
+        if (current != Kind.TOKEN_LBRACE)
+            eatToken(Kind.TOKEN_LBRACE);
+        int depth = 0;
+        int i = index;
+        for (;; i++) {
+            Kind kind = tokens.kind(i);
+            if (kind == Kind.TOKEN_LBRACE)
+                depth++;
+            else if (kind == Kind.TOKEN_RBRACE) {
+                if (--depth == 0)
+                    break;
+            } else if (kind == Kind.TOKEN_EOF) {
+                index = i;
+                current = kind;
+                eatToken(Kind.TOKEN_RBRACE);
+            }
+        }
+        index = i;
+        current = Kind.TOKEN_RBRACE;
+        advance();
+    }
+
+    // MethodDecls -> MethodDecl MethodDecls
+    // ->
+    // Return a LIST of the methods. They end at a token of STOPS but
+    // a "public"; any other token is skipped as an error.
+    private int parseMethodDecls() {
+        int offset = offset();
+        int mark = ast.mark();
+        while (!at(STOPS & ~FIRST_METHOD)) {
+            if (!at(FIRST_METHOD)) {
+                skipStray();
+                continue;
+            }
+            int item = ast.mark();
+            try {
+                ast.push(parseMethod());
+            } catch (SyntaxError e) {
+                ast.popTo(item);
+                recover();
+            }
+        }
+        return ast.make(Ast.Kind.LIST, offset, mark);
+    }
+
+    // ClassDecl -> class id { VarDecl* MethodDecl* }
+    // -> class id extends id { VarDecl* MethodDecl* }
+    private int parseClassDecl() {
+        int offset = offset();
+        eatToken(Kind.TOKEN_CLASS);
+        int name = eatName();
+        int parent = Ast.NONE;
+        if (current == Kind.TOKEN_EXTENDS) {
+            eatToken(Kind.TOKEN_EXTENDS);
+            parent = eatName();
+        }
+        eatToken(Kind.TOKEN_LBRACE);
+        int fields = parseVarDecls();
+        int methods = parseMethodDecls();
+        eatToken(Kind.TOKEN_RBRACE);
+
+        int mark = ast.mark();
+        ast.push(name);
+        ast.push(parent);
+        ast.push(fields);
+        ast.push(methods);
+        return ast.make(Ast.Kind.CLASS, offset, mark);
+    }
+
+    // ClassDecls -> ClassDecl ClassDecls
+    // ->
+    // The classes are pushed as slots of the program.
+    private void parseClassDecls() {
+        if (threads > 1)
+            parseClassesInParallel();
+        while (at(FIRST_CLASS)) {
+            parseClassOrRecover();
+        }
+        return;
+    }
+
+    // a ClassDecl pushed, or on an error, none and skipped
+    private void parseClassOrRecover() {
+        int mark = ast.mark();
+        try {
+            ast.push(parseClassDecl());
+        } catch (SyntaxError e) {
+            ast.popTo(mark);
+            recoverClass();
+        }
+    }
+
+    // ////////////////////////////////////////////////////////////
+    // Classes do not depend on each other to be parsed, so those of a
+    // large program are parsed on several threads (-parsethreads).
+    //
+    // The classes are found first, by braces only: a class is from
+    // its "class" up to the "}" matching the first "{" after it. They
+    // are cut into runs of about the same number of tokens, a few per
+    // thread, and each run is parsed by a parser of its own, into a
+    // tree of its own. The trees are then appended to this one in
+    // source order, with their errors, so the tree and the errors are
+    // the same as parsed on one thread. Whatever does not look like a
+    // class, from the first such token on, is left to the sequential
+    // loop.
+
+    // runs have at least this many tokens; smaller programs are
+    // parsed on one thread
+    private static final int MIN_RUN = 1 << 14;
+
+    private void parseClassesInParallel() {
+        int[] starts = scanClasses();
+        int n = starts.length - 1; // the number of classes found
+        int total = starts[n] - index;
+        if (total < 2 * MIN_RUN)
+            return;
+
+        // the runs: run k is the classes [runs[k], runs[k + 1])
+        int size = Math.max(MIN_RUN, total / (4 * threads) + 1);
+        List<Integer> runs = new ArrayList<>();
+        runs.add(0);
+        for (int c = 1; c < n; c++)
+            if (starts[c] - starts[runs.get(runs.size() - 1)] >= size)
+                runs.add(c);
+        runs.add(n);
+
+        List<Callable<Parser>> tasks = new ArrayList<>();
+        for (int k = 0; k + 1 < runs.size(); k++) {
+            int from = runs.get(k);
+            int to = runs.get(k + 1);
+            tasks.add(() -> {
+                Parser parser = new Parser(context, fname, tokens, starts[from]);
+                parser.ast = parser.tree(starts[to]);
+                parser.threads = 1;
+                while (parser.index < starts[to] && parser.at(FIRST_CLASS))
+                    parser.parseClassOrRecover();
+                return parser;
+            });
+        }
+
+        int end = index; // the end of the runs appended so far
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<Parser>> results = pool.invokeAll(tasks);
+            for (int k = 0; k < results.size(); k++) {
+                // a run whose classes did not parse up to where the
+                // next one starts (an error confused the braces) is
+                // followed by runs of no use: the rest is left to the
+                // sequential loop
+                if (end != starts[runs.get(k)])
+                    break;
+                Parser parser = results.get(k).get();
+                Ast run = parser.ast;
+                int base = ast.append(run);
+                // the classes of a run are the CLASS nodes of its tree,
+                // in order
+                for (int c = 0; c < run.size(); c++)
+                    if (run.kind(c) == Ast.Kind.CLASS)
+                        ast.push(base + c);
+                for (int m = 0; m < parser.bodies.length; m++)
+                    if (parser.bodies[m] != 0)
+                        skipped(base + m, parser.bodies[m] - 1);
+                errors.addAll(parser.errors);
+                quiet = parser.quiet;
+                end = parser.index;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        index = end;
+        current = tokens.kind(index);
+    }
+
+    // Find the classes from the current token on, by braces only.
+    // Return the index of the first token of each, then the index of
+    // the token after the last one.
+    private int[] scanClasses() {
+        int[] starts = new int[16];
+        int n = 0;
+        int i = index;
+        for (;;) {
+            if (n == starts.length)
+                starts = Arrays.copyOf(starts, n * 2);
+            starts[n] = i;
+            if (tokens.kind(i) != Kind.TOKEN_CLASS)
+                break;
+            // class id [extends id] {
+            int j = i + 1;
+            while (j < i + 5 && tokens.kind(j) != Kind.TOKEN_LBRACE
+                    && tokens.kind(j) != Kind.TOKEN_EOF)
+                j++;
+            if (tokens.kind(j) != Kind.TOKEN_LBRACE)
+                break;
+            int depth = 0;
+            for (;; j++) {
+                Kind kind = tokens.kind(j);
+                if (kind == Kind.TOKEN_LBRACE)
+                    depth++;
+                else if (kind == Kind.TOKEN_RBRACE) {
+                    if (--depth == 0)
+                        break;
+                } else if (kind == Kind.TOKEN_EOF)
+                    break;
+            }
+            if (depth != 0)
+                break;
+            i = j + 1;
+            n++;
+        }
+        return Arrays.copyOf(starts, n + 1);
+    }
+
+    // MainClass -> class id
+    // {
+    // public static void main ( String [] id )
+    // {
+    // Statement
+    // }
+    // }
+    private int parseMainClass() {
+        // Lab1. Exercise 4: Fill in the missing code
+        // to parse a main class as described by the
+        // grammar above.
+        int offset = offset();
+        eatToken(Kind.TOKEN_CLASS);
+        int name = eatName();
+        eatToken(Kind.TOKEN_LBRACE);
+        eatToken(Kind.TOKEN_PUBLIC);
+        eatToken(Kind.TOKEN_STATIC);
+        eatToken(Kind.TOKEN_VOID);
+        eatToken(Kind.TOKEN_MAIN);
+        eatToken(Kind.TOKEN_LPAREN);
+        eatToken(Kind.TOKEN_STRING);
+        eatToken(Kind.TOKEN_LBRACK);
+        eatToken(Kind.TOKEN_RBRACK);
+        int arg = eatName();
+        eatToken(Kind.TOKEN_RPAREN);
+        eatToken(Kind.TOKEN_LBRACE);
+        int statement = parseStatement();
+        eatToken(Kind.TOKEN_RBRACE);
+        eatToken(Kind.TOKEN_RBRACE);
+        return ast.node(Ast.Kind.MAIN_CLASS, offset, name, arg, statement);
+    }
+
+    // Program -> MainClass ClassDecl*
+    // The main class is NONE if it has an error.
+    private int parseProgram() {
+        int offset = offset();
+        int mark = ast.mark();
+        try {
+            ast.push(parseMainClass());
+        } catch (SyntaxError e) {
+            ast.popTo(mark);
+            top = 0;
+            ast.push(Ast.NONE);
+            recoverClass();
+        }
+        parseClassDecls();
+        while (current != Kind.TOKEN_EOF) {
+            try {
+                eatToken(Kind.TOKEN_EOF);
+            } catch (SyntaxError e) {
+                recoverClass();
+            }
+            parseClassDecls();
+        }
+        return ast.make(Ast.Kind.PROGRAM, offset, mark);
+    }
+
+    // ////////////////////////////////////////////////////////////
+    // The deep mode (-deep): statements and expressions are parsed
+    // by loops keeping their pending work on "frames", a stack on the
+    // heap, instead of by recursive calls, so that the nesting of
+    // blocks, parentheses or "!" is only bounded by the memory.
+    // Declarations do not nest, they are parsed as above.
+    //
+    // A frame is four ints: what is to be done once the statement or
+    // expression being parsed is complete, and up to three values.
+    // The trees built are those of the recursive methods above.
+
+    private static final int FRAME = 4;
+
+    // frames of expressions; each keeps the binding power to go on
+    // with in its last int
+    private static final int NOT = 0; // offset of the "!"
+    private static final int BINARY_RIGHT = 1; // operator node kind, left operand
+    private static final int PAREN = 2;
+    private static final int NEW_ARRAY = 3; // offset of the "new"
+    private static final int INDEX = 4; // array
+    private static final int ARGUMENT = 5; // mark of the slots of the call
+
+    // frames of statements
+    private static final int BLOCK = 6; // mark of the statements, offset of the "{",
+                                        // mark of the statement being parsed
+    private static final int THEN = 7; // offset of the "if", condition
+    private static final int ELSE = 8; // offset of the "if", condition, then
+    private static final int WHILE_BODY = 9; // offset of the "while", condition
+
+    private static final Ast.Kind[] AST_KINDS = Ast.Kind.values();
+
+    private int[] frames = new int[4 * FRAME];
+    private int top = 0; // frames[0, top) are in use
+
+    private void pushFrame(int what, int a, int b, int c) {
+        if (top + FRAME > frames.length)
+            frames = Arrays.copyOf(frames, frames.length * 2);
+        frames[top] = what;
+        frames[top + 1] = a;
+        frames[top + 2] = b;
+        frames[top + 3] = c;
+        top += FRAME;
+    }
+
+    // The same Exp as parseExp(1).
+    private int parseDeepExp() {
+        int bottom = top;
+        int min = 1; // the binding power of the operand to parse
+        int exp;
+        operand:
+        for (;;) {
+            // an operand: its prefix "!", then its atom
+            int offset = offset();
+            switch (current) {
+                case TOKEN_NOT:
+                    advance();
+                    pushFrame(NOT, offset, 0, min);
+                    min = PREFIX;
+                    continue operand;
+                case TOKEN_LPAREN:
+                    advance();
+                    pushFrame(PAREN, 0, 0, min);
+                    min = 1;
+                    continue operand;
+                case TOKEN_NEW:
+                    advance();
+                    if (current == Kind.TOKEN_INT) {
+                        advance();
+                        eatToken(Kind.TOKEN_LBRACK);
+                        pushFrame(NEW_ARRAY, offset, 0, min);
+                        min = 1;
+                        continue operand;
+                    }
+                    if (current != Kind.TOKEN_ID)
+                        error();
+                    int name = eatName();
+                    eatToken(Kind.TOKEN_LPAREN);
+                    eatToken(Kind.TOKEN_RPAREN);
+                    exp = ast.node(Ast.Kind.NEW_OBJECT, offset, name);
+                    break;
+                case TOKEN_NUM:
+                    exp = ast.node(Ast.Kind.NUM, offset, tokens.value(index));
+                    advance();
+                    break;
+                case TOKEN_TRUE:
+                    advance();
+                    exp = ast.node(Ast.Kind.TRUE, offset);
+                    break;
+                case TOKEN_FALSE:
+                    advance();
+                    exp = ast.node(Ast.Kind.FALSE, offset);
+                    break;
+                case TOKEN_THIS:
+                    advance();
+                    exp = ast.node(Ast.Kind.THIS, offset);
+                    break;
+                case TOKEN_ID:
+                    exp = ast.node(Ast.Kind.ID, offset, eatName());
+                    break;
+                default:
+                    error();
+                    return Ast.NONE;
+            }
+
+            // then its postfixes and operators, and up the frames as
+            // far as expressions are complete
+            boolean postfix = true; // whether "exp" may take a postfix
+            for (;;) {
+                if (postfix && current == Kind.TOKEN_LBRACK) {
+                    advance();
+                    pushFrame(INDEX, exp, 0, min);
+                    min = 1;
+                    continue operand;
+                }
+                if (postfix && current == Kind.TOKEN_DOT) {
+                    advance();
+                    if (current == Kind.TOKEN_LENGTH) {
+                        advance();
+                        exp = ast.node(Ast.Kind.LENGTH, ast.offset(exp), exp);
+                        postfix = false;
+                        continue;
+                    }
+                    int mark = ast.mark();
+                    ast.push(exp);
+                    ast.push(eatName());
+                    eatToken(Kind.TOKEN_LPAREN);
+                    if (!at(FOLLOW_EXP_LIST)) {
+                        pushFrame(ARGUMENT, mark, ast.offset(exp), min);
+                        min = 1;
+                        continue operand;
+                    }
+                    advance();
+                    exp = ast.make(Ast.Kind.CALL, ast.offset(exp), mark);
+                    continue;
+                }
+                int power = POWER[current.ordinal()];
+                if (power >= min) {
+                    pushFrame(BINARY_RIGHT, BINARY[current.ordinal()].ordinal(), exp, min);
+                    advance();
+                    min = power + 1;
+                    continue operand;
+                }
+
+                // "exp" is complete, for the frame on top
+                if (top == bottom)
+                    return exp;
+                top -= FRAME;
+                int a = frames[top + 1];
+                int b = frames[top + 2];
+                min = frames[top + 3];
+                postfix = true;
+                switch (frames[top]) {
+                    case NOT:
+                        exp = ast.node(Ast.Kind.NOT, a, exp);
+                        postfix = false;
+                        break;
+                    case BINARY_RIGHT:
+                        exp = ast.node(AST_KINDS[a], ast.offset(b), b, exp);
+                        postfix = false;
+                        break;
+                    case PAREN:
+                        eatToken(Kind.TOKEN_RPAREN);
+                        break;
+                    case NEW_ARRAY:
+                        eatToken(Kind.TOKEN_RBRACK);
+                        exp = ast.node(Ast.Kind.NEW_INT_ARRAY, a, exp);
+                        break;
+                    case INDEX:
+                        eatToken(Kind.TOKEN_RBRACK);
+                        exp = ast.node(Ast.Kind.ARRAY_SELECT, ast.offset(a), a, exp);
+                        break;
+                    case ARGUMENT:
+                        ast.push(exp);
+                        if (current == Kind.TOKEN_COMMER) {
+                            advance();
+                            top += FRAME; // the frame stays, for the next argument
+                            min = 1;
+                            continue operand;
+                        }
+                        eatToken(Kind.TOKEN_RPAREN);
+                        exp = ast.make(Ast.Kind.CALL, b, a);
+                        break;
+                    default:
+                        new Bug();
+                }
+            }
+        }
+    }
+
+    // The same Statement as the recursive parseStatement(). An error
+    // inside a block is recovered from here, as parseStatements()
+    // would: the statement of the innermost block is given up, and
+    // the block goes on after it.
+    private int parseDeepStatement() {
+        int bottom = top;
+        int statement;
+        boolean recovered = false; // whether to go on with the block on top
+        for (;;) {
+            try {
+                if (recovered) {
+                    recovered = false;
+                    statement = Ast.NONE;
+                } else {
+                    // a statement: either its first part, up to a
+                    // nested statement, or the whole of it
+                    int offset = offset();
+                    int exp;
+                    switch (current) {
+                        case TOKEN_LBRACE:
+                            advance();
+                            pushFrame(BLOCK, ast.mark(), offset, ast.mark());
+                            if (startsStatement())
+                                continue;
+                            statement = Ast.NONE; // an empty block
+                            break;
+                        case TOKEN_IF:
+                            advance();
+                            eatToken(Kind.TOKEN_LPAREN);
+                            exp = parseExp();
+                            eatToken(Kind.TOKEN_RPAREN);
+                            pushFrame(THEN, offset, exp, 0);
+                            continue;
+                        case TOKEN_WHILE:
+                            advance();
+                            eatToken(Kind.TOKEN_LPAREN);
+                            exp = parseExp();
+                            eatToken(Kind.TOKEN_RPAREN);
+                            pushFrame(WHILE_BODY, offset, exp, 0);
+                            continue;
+                        case TOKEN_SYSTEM:
+                            advance();
+                            eatToken(Kind.TOKEN_DOT);
+                            eatToken(Kind.TOKEN_OUT);
+                            eatToken(Kind.TOKEN_DOT);
+                            eatToken(Kind.TOKEN_PRINTLN);
+                            eatToken(Kind.TOKEN_LPAREN);
+                            exp = parseExp();
+                            eatToken(Kind.TOKEN_RPAREN);
+                            eatToken(Kind.TOKEN_SEMI);
+                            statement = ast.node(Ast.Kind.PRINT, offset, exp);
+                            break;
+                        case TOKEN_ID:
+                            statement = parseAssign(offset, eatName());
+                            break;
+                        default:
+                            error();
+                            return Ast.NONE;
+                    }
+                }
+
+                // then up the frames, as far as statements are complete
+                for (;;) {
+                    if (top == bottom)
+                        return statement;
+                    int at = top - FRAME;
+                    int a = frames[at + 1];
+                    int b = frames[at + 2];
+                    if (frames[at] == BLOCK) {
+                        if (statement != Ast.NONE)
+                            ast.push(statement);
+                        frames[at + 3] = ast.mark();
+                        if (startsStatement())
+                            break;
+                        if (!endsStatements())
+                            error(); // recovered from below, as by parseStatements()
+                        top = at;
+                        eatToken(Kind.TOKEN_RBRACE);
+                        statement = ast.make(Ast.Kind.BLOCK, b, a);
+                    } else if (frames[at] == THEN) {
+                        eatToken(Kind.TOKEN_ELSE);
+                        frames[at] = ELSE;
+                        frames[at + 3] = statement;
+                        break;
+                    } else if (frames[at] == ELSE) {
+                        top = at;
+                        statement = ast.node(Ast.Kind.IF, a, b, frames[at + 3], statement);
+                    } else if (frames[at] == WHILE_BODY) {
+                        top = at;
+                        statement = ast.node(Ast.Kind.WHILE, a, b, statement);
+                    } else
+                        new Bug();
+                }
+            } catch (SyntaxError e) {
+                // the innermost block, if any
+                int block = top - FRAME;
+                while (block >= bottom && frames[block] != BLOCK)
+                    block -= FRAME;
+                if (block < bottom)
+                    throw e;
+                ast.popTo(frames[block + 3]);
+                top = block + FRAME;
+                recover();
+                recovered = true;
+            }
+        }
+    }
+
+    // whether the current token starts a statement
+    private boolean startsStatement() {
+        return at(FIRST_STATEMENT);
+    }
+
+    // Parse the program, and return its tree. In the lazy mode
+    // (-lazy), only the declarations of classes and methods are
+    // parsed: the bodies of methods are skipped by matching their
+    // braces, and are left NONE in their METHOD, to be parsed by
+    // parseBody() when needed. A pass over the headers only, such as
+    // listing classes and signatures, then costs about one look at
+    // each token of the bodies.
+    @SuppressWarnings("try")
+    public Ast parse() {
+        try (Timing.Scope scope = context.timing.scope(Timing.Phase.PARSE)) {
+            ast = tree(tokens.size());
+            ast.setRoot(parseProgram());
+        }
+        return ast;
+    }
+
+    // Parse the body of "method", a METHOD of the tree, if it was
+    // skipped by a lazy parse and is not parsed yet. Its nodes are
+    // added to the tree, and its slots set to them, unless it has an
+    // error, added to errors(). Return "method".
+    public int parseBody(int method) {
+        if (method >= bodies.length || bodies[method] == 0)
+            return method;
+        int body = bodies[method] - 1;
+        bodies[method] = 0;
+
+        int index = this.index;
+        Kind current = this.current;
+        this.index = body;
+        this.current = tokens.kind(body);
+        int mark = ast.mark();
+        try {
+            parseMethodBody();
+            ast.set(method, 5, ast.pop());
+            ast.set(method, 4, ast.pop());
+            ast.set(method, 3, ast.pop());
+        } catch (SyntaxError e) {
+            // the slots stay NONE, the error is in errors()
+            ast.popTo(mark);
+        }
+        this.index = index;
+        this.current = current;
+        return method;
+    }
+}
@@ -1,9 +1,9 @@
-package util;
-
-public class Bug
-{
-  public Bug()
-  {
-    throw new java.lang.Error("Compiler bug");
-  }
-}
+package util;
+
+public class Bug
+{
+  public Bug()
+  {
+    throw new java.lang.Error("Compiler bug");
+  }
+}
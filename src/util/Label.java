@@ -1,18 +1,20 @@
-package util;
-
-public class Label
-{
-  private int i;
-  private static int count = 0;
-
-  public Label()
-  {
-    i = count++;
-  }
-
-  @Override
-  public String toString()
-  {
-    return "L_" + (Integer.toString(this.i));
-  }
-}
+package util;
+
+import control.CompilationContext;
+
+public class Label
+{
+  private int i;
+
+  // labels are numbered from 0 in each compilation
+  public Label(CompilationContext context)
+  {
+    i = context.nextLabel();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "L_" + (Integer.toString(this.i));
+  }
+}
@@ -0,0 +1,195 @@
+package util;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+
+// An interned name. There is exactly one Symbol for each distinct
+// name, shared by all compilations in this JVM, so symbols are
+// compared with "==" instead of String.equals().
+//
+// The table holds its symbols weakly: a symbol which no tree or token
+// refers to any more is collected, so a long-running server does not
+// keep every name it ever compiled. Whoever still holds a symbol keeps
+// it in the table, so it stays the only one of its name.
+//
+// Lookups do not lock: they read the current table without
+// synchronization, and only a miss takes the lock, looks again and
+// inserts. The fields of symbols are final, so a symbol seen through a
+// racy read is always fully built. The referent of an entry is not a
+// final field: a racy read may see it null, before it is set or once
+// it is collected. That counts as a miss, and the lookup under the
+// lock sees the entry as inserted.
+public class Symbol
+{
+  private static class Entry extends WeakReference<Symbol>
+  {
+    final int hash;
+    final Entry next;
+
+    Entry(Symbol symbol, Entry next)
+    {
+      super(symbol);
+      this.hash = symbol.hash;
+      this.next = next;
+    }
+  }
+
+  private static final int MIN = 1024;
+  private static final Object lock = new Object();
+  private static volatile Entry[] table = new Entry[MIN];
+  // the entries in the table, some of them maybe collected; guarded by
+  // "lock"
+  private static int count = 0;
+
+  public final String name;
+  private final int hash;
+
+  private Symbol(String name, int hash)
+  {
+    this.name = name;
+    this.hash = hash;
+  }
+
+  public static Symbol symbol(String name)
+  {
+    int h = name.hashCode();
+    Symbol s = find(table, name, h);
+    if (s != null)
+      return s;
+
+    synchronized (lock) {
+      s = find(table, name, h);
+      if (s == null)
+        s = insert(name, h);
+    }
+    return s;
+  }
+
+  // The symbol for the bytes [start, end) of "b", whose hash, as
+  // computed by hash() below, is "h". No String is built unless the
+  // name is new.
+  public static Symbol symbol(ByteBuffer b, int start, int end, int h)
+  {
+    Symbol s = find(table, b, start, end, h);
+    if (s != null)
+      return s;
+
+    synchronized (lock) {
+      s = find(table, b, start, end, h);
+      if (s == null) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++)
+          chars[i - start] = (char) (b.get(i) & 0xff);
+        s = insert(new String(chars), h);
+      }
+    }
+    return s;
+  }
+
+  // The hash of a name, one byte at a time: h = hash(h, b) for each
+  // byte, starting from 0. It equals String.hashCode() of the name.
+  public static int hash(int h, int b)
+  {
+    return 31 * h + b;
+  }
+
+  private static Symbol find(Entry[] t, String name, int h)
+  {
+    for (Entry e = t[h & (t.length - 1)]; e != null; e = e.next) {
+      if (e.hash != h)
+        continue;
+      Symbol s = e.get();
+      if (s != null && s.name.equals(name))
+        return s;
+    }
+    return null;
+  }
+
+  private static Symbol find(Entry[] t, ByteBuffer b, int start, int end,
+      int h)
+  {
+    for (Entry e = t[h & (t.length - 1)]; e != null; e = e.next) {
+      if (e.hash != h)
+        continue;
+      Symbol s = e.get();
+      if (s != null && s.name.length() == end - start && spells(s, b, start))
+        return s;
+    }
+    return null;
+  }
+
+  // whether the symbol is the name spelled by the bytes b[start, end),
+  // whose hash() is "h"
+  public boolean spells(ByteBuffer b, int start, int end, int h)
+  {
+    return hash == h && name.length() == end - start && spells(this, b, start);
+  }
+
+  private static boolean spells(Symbol s, ByteBuffer b, int start)
+  {
+    for (int i = 0; i < s.name.length(); i++) {
+      if (s.name.charAt(i) != (b.get(start + i) & 0xff))
+        return false;
+    }
+    return true;
+  }
+
+  // called with "lock" held
+  private static Symbol insert(String name, int h)
+  {
+    Symbol s = new Symbol(name, h);
+    Entry[] t = table;
+    if (count + 1 > t.length / 4 * 3)
+      t = rebuild(t);
+    int i = h & (t.length - 1);
+    t[i] = new Entry(s, t[i]);
+    count++;
+    table = t;
+    return s;
+  }
+
+  // A fresh table of the symbols not collected, so that readers of the
+  // old one never see it half rehashed. It is sized for twice as many
+  // symbols: it grows, or shrinks once many have been collected.
+  // Called with "lock" held.
+  private static Entry[] rebuild(Entry[] old)
+  {
+    int live = 0;
+    for (Entry e : old) {
+      for (; e != null; e = e.next) {
+        if (e.get() != null)
+          live++;
+      }
+    }
+    int n = MIN;
+    while (n / 4 * 3 < 2 * (live + 1))
+      n *= 2;
+    Entry[] t = new Entry[n];
+    count = 0;
+    for (Entry e : old) {
+      for (; e != null; e = e.next) {
+        Symbol s = e.get();
+        if (s != null) {
+          int i = s.hash & (t.length - 1);
+          t[i] = new Entry(s, t[i]);
+          count++;
+        }
+      }
+    }
+    return t;
+  }
+
+  // the hash of the name, for tables keyed by symbol (two symbols
+  // never have the same name, so equal symbols have equal hashes)
+  @Override
+  public int hashCode()
+  {
+    return hash;
+  }
+
+  @Override
+  public String toString()
+  {
+    return this.name;
+  }
+}
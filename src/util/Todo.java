@@ -1,10 +1,10 @@
-package util;
-
-public class Todo
-{
-  public Todo()
-  {
-    System.out.println("TODO: please add your code here:\n");
-    throw new java.lang.Error ();
-  }
-}
+package util;
+
+public class Todo
+{
+  public Todo()
+  {
+    System.out.println("TODO: please add your code here:\n");
+    throw new java.lang.Error ();
+  }
+}